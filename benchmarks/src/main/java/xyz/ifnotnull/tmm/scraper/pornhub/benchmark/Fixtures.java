@@ -0,0 +1,38 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Loads the checked in fixtures below {@code /fixtures}. They are synthetic pages with the structure of the real ones, so they exercise the same
+ * selectors and regexes as the scraper does.
+ */
+final class Fixtures {
+  static final String VIEW_PAGE   = "view_video.html";
+  static final String SEARCH_PAGE = "search.html";
+  static final String LD_JSON     = "ld_json.json";
+  static final String FILE_NAMES  = "file_names.txt";
+  static final String VIEW_KEY    = "644d924a9ccc8";
+
+  private Fixtures() {
+  }
+
+  static String load(String name) {
+    try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+      if (in == null) {
+        throw new IllegalStateException("missing fixture " + name);
+      }
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  static String[] lines(String name) {
+    return Arrays.stream(load(name).split("\\R")).filter(line -> !line.isBlank()).toArray(String[]::new);
+  }
+}
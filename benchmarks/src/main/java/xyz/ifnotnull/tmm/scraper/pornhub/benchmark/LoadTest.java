@@ -0,0 +1,150 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.benchmark;
+
+import org.tinymediamanager.core.movie.MovieSearchAndScrapeOptions;
+import org.tinymediamanager.scraper.entities.MediaLanguages;
+import xyz.ifnotnull.tmm.scraper.pornhub.PornhubMovieMetadataProvider;
+import xyz.ifnotnull.tmm.scraper.pornhub.metrics.LatencyHistogram;
+import xyz.ifnotnull.tmm.scraper.pornhub.util.DaemonThreadFactory;
+import xyz.ifnotnull.tmm.scraper.pornhub.util.ProcessMemory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * End to end load test: drives {@link PornhubMovieMetadataProvider#getMetadata(MovieSearchAndScrapeOptions)} and
+ * {@link PornhubMovieMetadataProvider#search(MovieSearchAndScrapeOptions)} against a {@link StandInSite} at increasing concurrency and
+ * prints scrapes per minute, latency percentiles and the peak memory of the JVM and the browsers.
+ * <p>
+ * Options, all optional: {@code --concurrency=1,2,4,8 --duration=30 --latency=150 --errorRate=0.01 --throttleRate=0.02
+ * --mode=metadata|search|mixed --fastPath=true --rate=1000}
+ */
+public class LoadTest {
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = parseArgs(args);
+    int[] levels = parseLevels(options.getOrDefault("concurrency", "1,2,4,8"));
+    long durationSeconds = Long.parseLong(options.getOrDefault("duration", "30"));
+    String mode = options.getOrDefault("mode", "metadata");
+    boolean fastPath = Boolean.parseBoolean(options.getOrDefault("fastPath", "true"));
+    String rate = options.getOrDefault("rate", "1000");
+
+    try (StandInSite site = new StandInSite(Long.parseLong(options.getOrDefault("latency", "150")),
+        Double.parseDouble(options.getOrDefault("errorRate", "0.01")), Double.parseDouble(options.getOrDefault("throttleRate", "0.02")))) {
+      // must be set before the provider class is initialized
+      System.setProperty("pornhub.baseUrl", site.getBaseUrl());
+      System.out.printf(Locale.ROOT, "stand-in site at %s, mode=%s, fastPath=%s, %ds per level%n", site.getBaseUrl(), mode, fastPath,
+          durationSeconds);
+      System.out.printf(Locale.ROOT, "%11s %12s %10s %10s %8s %12s %14s  %s%n", "concurrency", "scrapes/min", "p50 ms", "p99 ms", "errors",
+          "jvm rss MB", "browser rss MB", "site responses");
+
+      for (int concurrency : levels) {
+        PornhubMovieMetadataProvider provider = new PornhubMovieMetadataProvider();
+        try {
+          provider.getProviderInfo().getConfig().setValue("Use Metadata Cache", "false");
+          provider.getProviderInfo().getConfig().setValue("Use HTTP Fast Path", String.valueOf(fastPath));
+          provider.getProviderInfo().getConfig().setValue("Max Requests per Second", rate);
+          site.drainResponses();
+          runLevel(provider, site, concurrency, durationSeconds, mode);
+        }
+        finally {
+          provider.close();
+        }
+      }
+    }
+  }
+
+  private static void runLevel(PornhubMovieMetadataProvider provider, StandInSite site, int concurrency, long durationSeconds, String mode)
+      throws InterruptedException {
+    LatencyHistogram latency = new LatencyHistogram();
+    LongAdder errors = new LongAdder();
+    LongAccumulator jvmRss = new LongAccumulator(Math::max, -1);
+    LongAccumulator browserRss = new LongAccumulator(Math::max, -1);
+    AtomicLong sequence = new AtomicLong();
+
+    ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("load-test-sampler"));
+    sampler.scheduleAtFixedRate(() -> {
+      jvmRss.accumulate(ProcessMemory.jvmRss());
+      browserRss.accumulate(ProcessMemory.descendantsRss());
+    }, 0, 1, TimeUnit.SECONDS);
+
+    ExecutorService workers = Executors.newFixedThreadPool(concurrency, new DaemonThreadFactory("load-test-worker"));
+    long start = System.nanoTime();
+    long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+    for (int i = 0; i < concurrency; i++) {
+      workers.submit(() -> {
+        while (System.nanoTime() < end && !Thread.currentThread().isInterrupted()) {
+          long n = sequence.incrementAndGet();
+          boolean search = "search".equals(mode) || ("mixed".equals(mode) && n % 4 == 0);
+          long callStart = System.nanoTime();
+          try {
+            Object result = search ? provider.search(searchOptions(n)) : provider.getMetadata(metadataOptions(n));
+            if (result == null) {
+              errors.increment();
+            }
+          }
+          catch (Exception e) {
+            errors.increment();
+          }
+          latency.record(System.nanoTime() - callStart);
+        }
+      });
+    }
+    workers.shutdown();
+    workers.awaitTermination(durationSeconds + 600, TimeUnit.SECONDS);
+    long elapsed = System.nanoTime() - start;
+    sampler.shutdownNow();
+
+    LatencyHistogram.Snapshot snapshot = latency.snapshot();
+    double perMinute = snapshot.getCount() * TimeUnit.MINUTES.toNanos(1) / (double) elapsed;
+    System.out.printf(Locale.ROOT, "%11d %12.1f %10.1f %10.1f %8d %12s %14s  %s%n", concurrency, perMinute, snapshot.getP50(),
+        snapshot.getP99(), errors.sum(), megabytes(jvmRss.get()), megabytes(browserRss.get()), site.drainResponses());
+  }
+
+  private static MovieSearchAndScrapeOptions metadataOptions(long n) {
+    MovieSearchAndScrapeOptions options = new MovieSearchAndScrapeOptions();
+    options.setLanguage(MediaLanguages.en);
+    // a fresh viewkey per call, so that nothing is served from memory
+    options.setId(PornhubMovieMetadataProvider.ID, String.format(Locale.ROOT, "64%011x", n));
+    return options;
+  }
+
+  private static MovieSearchAndScrapeOptions searchOptions(long n) {
+    MovieSearchAndScrapeOptions options = new MovieSearchAndScrapeOptions();
+    options.setLanguage(MediaLanguages.en);
+    options.setSearchQuery("shoot house " + ThreadLocalRandom.current().nextInt(1000) + " " + n);
+    return options;
+  }
+
+  private static String megabytes(long bytes) {
+    return bytes < 0 ? "n/a" : String.valueOf(bytes / (1024 * 1024));
+  }
+
+  private static int[] parseLevels(String value) {
+    List<Integer> levels = new ArrayList<>();
+    for (String level : value.split(",")) {
+      levels.add(Integer.parseInt(level.trim()));
+    }
+    return levels.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  private static Map<String, String> parseArgs(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      if (arg.startsWith("--") && arg.contains("=")) {
+        options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+      }
+    }
+    return options;
+  }
+}
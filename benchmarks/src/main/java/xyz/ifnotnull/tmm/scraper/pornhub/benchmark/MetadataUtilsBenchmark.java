@@ -0,0 +1,120 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.benchmark;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.VideoPage;
+import xyz.ifnotnull.tmm.scraper.pornhub.parser.MetadataUtils;
+import xyz.ifnotnull.tmm.scraper.pornhub.parser.VideoPageHtmlParser;
+import xyz.ifnotnull.tmm.scraper.pornhub.parser.ViewKeyMatcher;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The string work of mapping a page to metadata: plot unescaping, thumbnail and fanart url expansion, relative dates of the search
+ * results and the viewkey patterns on file names.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataUtilsBenchmark {
+  private String         description;
+  private String         thumbUrlPattern;
+  private String         posterUrl;
+  private String[]       addedDates;
+  private String[]       fileNames;
+  private Pattern        idMatcher;
+  private ViewKeyMatcher viewKeyMatcher;
+  private LocalDateTime  now;
+
+  @Setup
+  public void setup() {
+    VideoPage videoPage = new VideoPageHtmlParser().parse(Fixtures.VIEW_KEY, Fixtures.load(Fixtures.VIEW_PAGE));
+    description = videoPage.getLdJson().getDescription();
+    posterUrl = videoPage.getLdJson().getThumbnailUrl();
+    thumbUrlPattern = videoPage.getThumbUrlPattern();
+    addedDates = Jsoup.parse(Fixtures.load(Fixtures.SEARCH_PAGE))
+        .select("#videoSearchResult var.added")
+        .stream()
+        .map(Element::text)
+        .toArray(String[]::new);
+    fileNames = Fixtures.lines(Fixtures.FILE_NAMES);
+    idMatcher = Pattern.compile(MetadataUtils.DEFAULT_ID_MATCHER);
+    viewKeyMatcher = new ViewKeyMatcher(MetadataUtils.DEFAULT_ID_MATCHER);
+    now = LocalDateTime.now();
+  }
+
+  @Benchmark
+  public String unescapePlot() {
+    return MetadataUtils.unescapePlot(description);
+  }
+
+  @Benchmark
+  public List<String> thumbUrls() {
+    return MetadataUtils.thumbUrls(thumbUrlPattern);
+  }
+
+  @Benchmark
+  public List<String> fanartUrls() {
+    return MetadataUtils.fanartUrls(posterUrl);
+  }
+
+  /**
+   * all relative dates of one search result page
+   */
+  @Benchmark
+  public void parseAddedDates(Blackhole bh) {
+    for (String addedDate : addedDates) {
+      bh.consume(MetadataUtils.parseAddedDate(addedDate, now));
+    }
+  }
+
+  /**
+   * the id lookup for a batch of file names with the pattern compiled once
+   */
+  @Benchmark
+  public void matchIds(Blackhole bh) {
+    for (String fileName : fileNames) {
+      Matcher matcher = idMatcher.matcher(fileName);
+      bh.consume(matcher.matches() ? matcher.group(1) : null);
+    }
+  }
+
+  /**
+   * the same lookup compiling the configured pattern for every file name
+   */
+  @Benchmark
+  public void matchIdsCompileEach(Blackhole bh) {
+    for (String fileName : fileNames) {
+      Matcher matcher = Pattern.compile(MetadataUtils.DEFAULT_ID_MATCHER).matcher(fileName);
+      bh.consume(matcher.matches() ? matcher.group(1) : null);
+    }
+  }
+
+  /**
+   * the lookup the provider does: the configured pattern, then the built-in viewkey patterns for the names it does not match
+   */
+  @Benchmark
+  public void matchIdsOrdered(Blackhole bh) {
+    for (String fileName : fileNames) {
+      bh.consume(viewKeyMatcher.find(fileName));
+    }
+  }
+}
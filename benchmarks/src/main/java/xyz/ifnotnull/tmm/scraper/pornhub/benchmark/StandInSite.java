@@ -0,0 +1,129 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import xyz.ifnotnull.tmm.scraper.pornhub.util.DaemonThreadFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A local stand-in for the site. It serves the view and search page fixtures on a loopback port, with a configurable latency and
+ * injected 500 and 429 responses. Point the scraper at it with the {@code pornhub.baseUrl} system property.
+ */
+public class StandInSite implements AutoCloseable {
+  private static final String CDN_STATIC = "https://ei.phncdn.com/www-static/";
+
+  private final HttpServer              server;
+  private final ExecutorService         executor;
+  private final long                    latencyMillis;
+  private final double                  errorRate;
+  private final double                  throttleRate;
+  private final String                  viewPage;
+  private final String                  searchPage;
+  private final Map<Integer, LongAdder> responses = new ConcurrentHashMap<>();
+
+  /**
+   * @param latencyMillis
+   *     the mean latency of a page, the actual latency is spread evenly by +-50%
+   * @param errorRate
+   *     the share of page requests answered with a 500
+   * @param throttleRate
+   *     the share of page requests answered with a 429 and {@code Retry-After: 1}
+   * @throws IOException
+   *     the server could not be bound
+   */
+  public StandInSite(long latencyMillis, double errorRate, double throttleRate) throws IOException {
+    this.latencyMillis = latencyMillis;
+    this.errorRate = errorRate;
+    this.throttleRate = throttleRate;
+    // the browser must not load the page scripts and styles from the real cdn
+    this.viewPage = Fixtures.load(Fixtures.VIEW_PAGE).replace(CDN_STATIC, "/www-static/");
+    this.searchPage = Fixtures.load(Fixtures.SEARCH_PAGE).replace(CDN_STATIC, "/www-static/");
+
+    executor = Executors.newCachedThreadPool(new DaemonThreadFactory("stand-in-site"));
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.setExecutor(executor);
+    server.createContext("/view_video.php", exchange -> page(exchange, () -> viewPage.replace(Fixtures.VIEW_KEY, viewKey(exchange))));
+    server.createContext("/video/search", exchange -> page(exchange, () -> searchPage));
+    server.createContext("/", exchange -> respond(exchange, 204, null));
+    server.start();
+  }
+
+  public String getBaseUrl() {
+    return "http://" + server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort();
+  }
+
+  /**
+   * @return the number of responses by status since the last call
+   */
+  public Map<Integer, Long> drainResponses() {
+    Map<Integer, Long> counts = new TreeMap<>();
+    responses.forEach((status, adder) -> counts.put(status, adder.sumThenReset()));
+    return counts;
+  }
+
+  private void page(HttpExchange exchange, Supplier<String> body) throws IOException {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    if (latencyMillis > 0) {
+      try {
+        Thread.sleep(latencyMillis / 2 + random.nextLong(latencyMillis + 1));
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    double roll = random.nextDouble();
+    if (roll < throttleRate) {
+      exchange.getResponseHeaders().set("Retry-After", "1");
+      respond(exchange, 429, null);
+    }
+    else if (roll < throttleRate + errorRate) {
+      respond(exchange, 500, null);
+    }
+    else {
+      exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+      respond(exchange, 200, body.get());
+    }
+  }
+
+  private void respond(HttpExchange exchange, int status, String body) throws IOException {
+    responses.computeIfAbsent(status, s -> new LongAdder()).increment();
+    byte[] bytes = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static String viewKey(HttpExchange exchange) {
+    String query = exchange.getRequestURI().getRawQuery();
+    if (query != null) {
+      for (String param : query.split("&")) {
+        if (param.startsWith("viewkey=")) {
+          return URLDecoder.decode(param.substring(8), StandardCharsets.UTF_8);
+        }
+      }
+    }
+    return Fixtures.VIEW_KEY;
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}
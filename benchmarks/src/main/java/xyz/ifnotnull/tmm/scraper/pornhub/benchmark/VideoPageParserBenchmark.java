@@ -0,0 +1,62 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.LdJson;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.VideoPage;
+import xyz.ifnotnull.tmm.scraper.pornhub.parser.VideoPageHtmlParser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The HTTP fast path: raw {@code view_video.php} html to {@link VideoPage} (from the response bytes as the scraper does, and from a
+ * String), and the ld+json block alone through the shared mapper.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VideoPageParserBenchmark {
+  private VideoPageHtmlParser parser;
+  private String              viewPage;
+  private byte[]              viewPageBytes;
+  private String              ldJson;
+
+  @Setup
+  public void setup() {
+    parser = new VideoPageHtmlParser();
+    viewPage = Fixtures.load(Fixtures.VIEW_PAGE);
+    viewPageBytes = viewPage.getBytes(StandardCharsets.UTF_8);
+    ldJson = Fixtures.load(Fixtures.LD_JSON);
+    if (!parser.parse(Fixtures.VIEW_KEY, viewPage).isComplete()) {
+      throw new IllegalStateException("the view page fixture does not parse into a complete page");
+    }
+  }
+
+  @Benchmark
+  public VideoPage parseViewPageBytes() {
+    return parser.parse(Fixtures.VIEW_KEY, viewPageBytes);
+  }
+
+  @Benchmark
+  public VideoPage parseViewPage() {
+    return parser.parse(Fixtures.VIEW_KEY, viewPage);
+  }
+
+  @Benchmark
+  public LdJson parseLdJson() throws IOException {
+    return parser.parseLdJson(ldJson);
+  }
+}
@@ -1,25 +1,72 @@
 package xyz.ifnotnull.tmm.scraper.pornhub;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.tinymediamanager.scraper.ArtworkSearchAndScrapeOptions;
+import org.tinymediamanager.scraper.MediaMetadata;
 import org.tinymediamanager.scraper.MediaProviderInfo;
 import org.tinymediamanager.scraper.entities.MediaArtwork;
 import org.tinymediamanager.scraper.exceptions.MissingIdException;
 import org.tinymediamanager.scraper.exceptions.ScrapeException;
 import org.tinymediamanager.scraper.interfaces.IMovieArtworkProvider;
+import xyz.ifnotnull.tmm.scraper.pornhub.artwork.ArtworkProber;
+import xyz.ifnotnull.tmm.scraper.pornhub.artwork.ImageServer;
+import xyz.ifnotnull.tmm.scraper.pornhub.artwork.PosterPipeline;
+import xyz.ifnotnull.tmm.scraper.pornhub.cache.ArtworkProbeCache;
+import xyz.ifnotnull.tmm.scraper.pornhub.http.PornhubHttpClient;
+import xyz.ifnotnull.tmm.scraper.pornhub.http.ProxyPool;
+import xyz.ifnotnull.tmm.scraper.pornhub.http.RequestGovernor;
+import xyz.ifnotnull.tmm.scraper.pornhub.metrics.ScraperMetrics;
+import xyz.ifnotnull.tmm.scraper.pornhub.parser.MetadataUtils;
+import xyz.ifnotnull.tmm.scraper.pornhub.util.DaemonThreadFactory;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 public class PornhubMovieArtworkProvider implements IMovieArtworkProvider {
 
-  private static final Logger logger = LoggerFactory.getLogger(PornhubMovieArtworkProvider.class);
+  private static final Logger logger                    = LoggerFactory.getLogger(PornhubMovieArtworkProvider.class);
+  private static final String CONFIG_VALIDATE           = "Validate Artwork";
+  private static final String CONFIG_PROBE_CONCURRENCY  = "Artwork Probe Concurrency";
+  private static final String CONFIG_PROBE_CACHE_TTL    = "Artwork Cache TTL (min)";
+  private static final String CONFIG_SERVE_LOCALLY      = "Serve Artwork Locally";
+  private static final String CONFIG_IMAGE_STORE_SIZE   = "Image Store Size (MB)";
+  private static final String CONFIG_GENERATE_POSTERS   = "Generate Posters";
+  private static final String CONFIG_POSTER_TIMEOUT     = "Poster Generation Timeout (s)";
+  private static final int    DEFAULT_PROBE_CONCURRENCY = 8;
+  private static final int    DEFAULT_PROBE_CACHE_TTL   = 60;
+  private static final int    DEFAULT_IMAGE_STORE_SIZE  = 1024;
+  // the first scrape of a video mostly goes without, the next one finds the generated images ready
+  private static final int    DEFAULT_POSTER_TIMEOUT    = 2;
+  private static final int    PROBE_CACHE_SIZE          = 1000;
+  // the images come from the cdn, which takes more requests than the site itself
+  private static final int    PROBE_RATE                = 20;
+  private static final int    PROBE_RETRIES             = 1;
 
   private final MediaProviderInfo providerInfo;
+  private final ScraperMetrics    metrics = new ScraperMetrics();
+  private final ArtworkProbeCache probeCache;
+  private       ArtworkProber     prober;
 
   public PornhubMovieArtworkProvider() {
     this.providerInfo = createProviderInfo();
+    metrics.register("ArtworkMetrics");
+    Integer ttl = providerInfo.getConfig().getValueAsInteger(CONFIG_PROBE_CACHE_TTL);
+    this.probeCache = new ArtworkProbeCache(Duration.ofMinutes(ttl == null ? DEFAULT_PROBE_CACHE_TTL : ttl), PROBE_CACHE_SIZE);
   }
 
   private MediaProviderInfo createProviderInfo() {
@@ -29,10 +76,16 @@ public class PornhubMovieArtworkProvider implements IMovieArtworkProvider {
     info.setResourceBundle(ResourceBundle.getBundle("xyz.ifnotnull.tmm.scraper.pornhub.messages"));
 
     // create configuration properties
-    info.getConfig().addText("text", "", false);
-    info.getConfig().addBoolean("boolean", true);
-    info.getConfig().addInteger("integer", 10);
-    info.getConfig().addSelect("select", new String[] { "A", "B", "C" }, "A");
+    info.getConfig().addBoolean(CONFIG_VALIDATE, true);
+    info.getConfig().addInteger(CONFIG_PROBE_CONCURRENCY, DEFAULT_PROBE_CONCURRENCY);
+    info.getConfig().addInteger(CONFIG_PROBE_CACHE_TTL, DEFAULT_PROBE_CACHE_TTL);
+    // off by default: tinyMediaManager writes the local urls into its database and the NFO files, where other players cannot load them
+    info.getConfig().addBoolean(CONFIG_SERVE_LOCALLY, false);
+    info.getConfig().addInteger(CONFIG_IMAGE_STORE_SIZE, DEFAULT_IMAGE_STORE_SIZE);
+    // off by default like serving locally: the generated images only exist as local urls, which tinyMediaManager writes into its
+    // database and the NFO files, and they start the local image server
+    info.getConfig().addBoolean(CONFIG_GENERATE_POSTERS, false);
+    info.getConfig().addInteger(CONFIG_POSTER_TIMEOUT, DEFAULT_POSTER_TIMEOUT);
 
     // load any existing values from the storage
     info.getConfig().load();
@@ -40,6 +93,24 @@ public class PornhubMovieArtworkProvider implements IMovieArtworkProvider {
     return info;
   }
 
+  private synchronized ArtworkProber prober() {
+    if (prober == null) {
+      int threads = getConfigInteger(CONFIG_PROBE_CONCURRENCY, DEFAULT_PROBE_CONCURRENCY);
+      ExecutorService executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("pornhub-artwork"));
+      RequestGovernor governor = new RequestGovernor(PROBE_RATE, threads, Math.max(threads, 16));
+      prober = new ArtworkProber(new PornhubHttpClient(PornhubMovieMetadataProvider.API_URL, Duration.ofSeconds(15), governor,
+          PROBE_RETRIES, metrics, ProxyPool.ofGlobalSettings(metrics)), executor, metrics);
+    }
+    return prober;
+  }
+
+  /**
+   * @return the probe timings and the counters of dead and duplicate artwork
+   */
+  public ScraperMetrics getMetrics() {
+    return metrics;
+  }
+
   /**
    * Gets a general information about the metadata provider
    *
@@ -74,6 +145,179 @@ public class PornhubMovieArtworkProvider implements IMovieArtworkProvider {
   @Override
   public List<MediaArtwork> getArtwork(ArtworkSearchAndScrapeOptions options) throws ScrapeException, MissingIdException {
     logger.debug("getArtwork(): {}", options);
-    return options.getMetadata().getMediaArt();
+    MediaMetadata metadata = options.getMetadata();
+    if (metadata == null) {
+      return Collections.emptyList();
+    }
+    List<MediaArtwork> artwork = metadata.getMediaArt();
+    String viewKey = StringUtils.defaultIfEmpty(options.getIdAsString(PornhubMovieMetadataProvider.ID),
+        metadata.getIdAsString(PornhubMovieMetadataProvider.ID));
+    if (isEnabled(CONFIG_VALIDATE) && !artwork.isEmpty()) {
+      long start = System.nanoTime();
+      try {
+        artwork = validate(viewKey, artwork);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ScrapeException(e);
+      }
+      finally {
+        metrics.record("artwork.validate", start);
+      }
+    }
+    if (isEnabled(CONFIG_GENERATE_POSTERS) && viewKey != null && !artwork.isEmpty()) {
+      artwork = withGenerated(viewKey, artwork, options.getLanguage().getLanguage());
+    }
+    if (isEnabled(CONFIG_SERVE_LOCALLY)) {
+      localize(artwork);
+    }
+    return artwork;
+  }
+
+  /**
+   * Puts a 2:3 poster and a banner cut from the best frame of the video in front of the artwork, among artwork of the same size order
+   * tinyMediaManager takes the first. They are made on the workers of the poster pipeline, the scrape only waits for the short timeout;
+   * if that is not enough the artwork is returned without them and the next scrape finds them ready.
+   */
+  private List<MediaArtwork> withGenerated(String viewKey, List<MediaArtwork> artwork, String language) throws ScrapeException {
+    ImageServer server = ImageServer.shared();
+    if (server == null) {
+      return artwork;
+    }
+    // the poster of the site is the first frame of the video, the backgrounds are the other ones
+    List<String> frames = artwork.stream()
+        .filter(a -> a.getType() == MediaArtwork.MediaArtworkType.POSTER || a.getType() == MediaArtwork.MediaArtworkType.BACKGROUND)
+        .map(MediaArtwork::getOriginalUrl)
+        .filter(StringUtils::isNotBlank)
+        .distinct()
+        .collect(Collectors.toList());
+    if (frames.isEmpty()) {
+      return artwork;
+    }
+
+    PosterPipeline.GeneratedImages images;
+    long start = System.nanoTime();
+    try {
+      images = server.getPosterPipeline()
+          .generate(viewKey, frames)
+          .get(getConfigInteger(CONFIG_POSTER_TIMEOUT, DEFAULT_POSTER_TIMEOUT), TimeUnit.SECONDS);
+    }
+    catch (TimeoutException e) {
+      metrics.increment("artwork.generate.timeout");
+      logger.debug("the poster of {} is not ready yet", viewKey);
+      return artwork;
+    }
+    catch (ExecutionException e) {
+      logger.debug("could not generate the poster of {}: {}", viewKey, e.getCause().getMessage());
+      return artwork;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ScrapeException(e);
+    }
+    finally {
+      metrics.record("artwork.generate", start);
+    }
+
+    List<MediaArtwork> result = new ArrayList<>(artwork.size() + 2);
+    addGenerated(result, server, images.getPoster(), MediaArtwork.MediaArtworkType.POSTER, language);
+    addGenerated(result, server, images.getBanner(), MediaArtwork.MediaArtworkType.BANNER, language);
+    result.addAll(artwork);
+    return result;
+  }
+
+  private static void addGenerated(List<MediaArtwork> artwork, ImageServer server, PosterPipeline.GeneratedImage image,
+      MediaArtwork.MediaArtworkType type, String language) {
+    if (image == null) {
+      return;
+    }
+    String url = server.generatedUrl(image);
+    MediaArtwork generated = new MediaArtwork(PornhubMovieMetadataProvider.ID, type);
+    generated.setLanguage(language);
+    generated.setDefaultUrl(url);
+    generated.setPreviewUrl(url);
+    generated.setOriginalUrl(url);
+    generated.setSizeOrder(MetadataUtils.artworkSizeOrder(image.getWidth()));
+    artwork.add(generated);
+  }
+
+  /**
+   * Points the artwork to the local image server: every image is downloaded from the site once and then served from the image store,
+   * whichever video and whichever of its urls it is requested by. The local urls are persisted by tinyMediaManager and break when the
+   * port changes, the store evicts the image or the addon is removed, hence the option is off by default.
+   */
+  private void localize(List<MediaArtwork> artwork) {
+    ImageServer server = ImageServer.shared();
+    if (server == null) {
+      return;
+    }
+    server.setMaxSize(getConfigInteger(CONFIG_IMAGE_STORE_SIZE, DEFAULT_IMAGE_STORE_SIZE) * 1024L * 1024L);
+    for (MediaArtwork mediaArtwork : artwork) {
+      mediaArtwork.setDefaultUrl(server.localUrl(mediaArtwork.getDefaultUrl()));
+      mediaArtwork.setOriginalUrl(server.localUrl(mediaArtwork.getOriginalUrl()));
+      mediaArtwork.setPreviewUrl(server.localUrl(mediaArtwork.getPreviewUrl()));
+    }
+  }
+
+  private boolean isEnabled(String key) {
+    return !Boolean.FALSE.equals(providerInfo.getConfig().getValueAsBool(key));
+  }
+
+  private int getConfigInteger(String key, int defaultValue) {
+    Integer value = providerInfo.getConfig().getValueAsInteger(key);
+    return value == null || value <= 0 ? defaultValue : value;
+  }
+
+  /**
+   * Drops the artwork whose url is dead and the artwork which shows the same image as one before it, and sets the size order of the rest
+   * from the real image dimensions. Artwork which could not be probed is passed through unchanged.
+   *
+   * @param viewKey
+   *     the viewkey of the video, the probes are cached under it
+   * @param candidates
+   *     the artwork of the metadata
+   * @return the usable artwork in the order of the candidates
+   */
+  private List<MediaArtwork> validate(String viewKey, List<MediaArtwork> candidates) throws InterruptedException {
+    Map<String, ArtworkProber.Probe> probes = new HashMap<>(viewKey == null ? Collections.emptyMap() : probeCache.get(viewKey));
+    List<String> unknown = candidates.stream()
+        .map(MediaArtwork::getOriginalUrl)
+        .filter(url -> !probes.containsKey(url))
+        .collect(Collectors.toList());
+    if (unknown.isEmpty()) {
+      metrics.increment("artwork.cache.hit");
+    }
+    else {
+      Map<String, ArtworkProber.Probe> fresh = prober().probe(unknown);
+      if (viewKey != null) {
+        probeCache.put(viewKey, fresh);
+      }
+      probes.putAll(fresh);
+    }
+
+    List<MediaArtwork> artwork = new ArrayList<>(candidates.size());
+    Set<String> seen = new HashSet<>();
+    for (MediaArtwork candidate : candidates) {
+      ArtworkProber.Probe probe = probes.get(candidate.getOriginalUrl());
+      if (probe == null || !probe.isAnswered()) {
+        artwork.add(candidate);
+        continue;
+      }
+      if (probe.isDead()) {
+        metrics.increment("artwork.dead");
+        continue;
+      }
+      // the poster is offered as thumb as well, only the same image twice within one type is a duplicate
+      if (!seen.add(candidate.getType() + "|" + probe.getFingerprint())) {
+        metrics.increment("artwork.duplicate");
+        continue;
+      }
+      if (probe.getWidth() > 0) {
+        candidate.setSizeOrder(MetadataUtils.artworkSizeOrder(probe.getWidth()));
+      }
+      artwork.add(candidate);
+    }
+    logger.debug("{} of {} artwork urls of {} are usable", artwork.size(), candidates.size(), viewKey);
+    return artwork;
   }
 }
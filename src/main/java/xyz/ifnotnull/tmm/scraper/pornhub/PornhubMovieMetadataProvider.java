@@ -1,14 +1,14 @@
 package xyz.ifnotnull.tmm.scraper.pornhub;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.microsoft.playwright.*;
-import com.microsoft.playwright.options.AriaRole;
+import com.microsoft.playwright.options.WaitUntilState;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.text.StringEscapeUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.tinymediamanager.Globals;
 import org.tinymediamanager.core.entities.MediaGenres;
 import org.tinymediamanager.core.entities.MediaRating;
 import org.tinymediamanager.core.entities.MediaTrailer;
@@ -22,37 +22,184 @@ import org.tinymediamanager.scraper.entities.MediaCertification;
 import org.tinymediamanager.scraper.entities.MediaType;
 import org.tinymediamanager.scraper.exceptions.MissingIdException;
 import org.tinymediamanager.scraper.exceptions.ScrapeException;
-import org.tinymediamanager.scraper.http.ProxySettings;
 import org.tinymediamanager.scraper.interfaces.IMovieMetadataProvider;
 import org.tinymediamanager.scraper.util.MetadataUtil;
+import xyz.ifnotnull.tmm.scraper.pornhub.artwork.ImageServer;
+import xyz.ifnotnull.tmm.scraper.pornhub.browser.BrowserPool;
+import xyz.ifnotnull.tmm.scraper.pornhub.browser.LoginSession;
+import xyz.ifnotnull.tmm.scraper.pornhub.browser.PageExtractor;
+import xyz.ifnotnull.tmm.scraper.pornhub.browser.ResourceBlocker;
+import xyz.ifnotnull.tmm.scraper.pornhub.cache.ScrapeJournal;
+import xyz.ifnotnull.tmm.scraper.pornhub.cache.ScraperStore;
+import xyz.ifnotnull.tmm.scraper.pornhub.cache.SearchResultCache;
+import xyz.ifnotnull.tmm.scraper.pornhub.cache.StatisticsStore;
+import xyz.ifnotnull.tmm.scraper.pornhub.cache.VideoPageCache;
+import xyz.ifnotnull.tmm.scraper.pornhub.cache.ViewKeyIndex;
 import xyz.ifnotnull.tmm.scraper.pornhub.dto.LdJson;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.ScrapeTier;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.SearchResultItem;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.VideoPage;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.VideoStatistics;
+import xyz.ifnotnull.tmm.scraper.pornhub.http.PornhubHttpClient;
+import xyz.ifnotnull.tmm.scraper.pornhub.http.ProxyPool;
+import xyz.ifnotnull.tmm.scraper.pornhub.http.RequestGovernor;
+import xyz.ifnotnull.tmm.scraper.pornhub.metrics.BatchProgress;
+import xyz.ifnotnull.tmm.scraper.pornhub.metrics.ScraperMetrics;
+import xyz.ifnotnull.tmm.scraper.pornhub.parser.MetadataUtils;
+import xyz.ifnotnull.tmm.scraper.pornhub.parser.VideoPageHtmlParser;
+import xyz.ifnotnull.tmm.scraper.pornhub.parser.ViewKeyMatcher;
+import xyz.ifnotnull.tmm.scraper.pornhub.util.DaemonThreadFactory;
+import xyz.ifnotnull.tmm.scraper.pornhub.util.SingleFlight;
 
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 public class PornhubMovieMetadataProvider implements IMovieMetadataProvider {
-  public static final  String            ID                      = "pornhub";
-  public static final  String            API_HOST                = "pornhub.com";
-  public static final  String            API_URL                 = "https://" + API_HOST;
-  private static final Logger            logger                  = LoggerFactory.getLogger(PornhubMovieMetadataProvider.class);
-  private static final Pattern           ADD_DATE_REGEX          = Pattern.compile("^(\\d+)\\s*(\\S+)\\s*(?:ago|前)$");
-  private static final Pattern           THUMB_URL_INDEX_PATTERN = Pattern.compile("\\{(\\d+)}");
-  private static final String            CONFIG_ID_MATCHER       = "ID Matcher";
-  private static final String            CONFIG_ACCOUNT          = "Pornhub Account";
-  private static final String            CONFIG_PASSWORD         = "Pornhub Password";
-  private final        ObjectMapper      objectMapper            = new ObjectMapper();
-  private final        MediaProviderInfo providerInfo;
-  private final        Playwright        playwright;
-  private final        Browser           browser;
+  public static final  String              ID                         = "pornhub";
+  public static final  String              API_HOST                   = "pornhub.com";
+  // can be pointed at a local stand-in of the site, see the load test in the benchmarks module
+  public static final  String              API_URL                    = System.getProperty("pornhub.baseUrl", "https://" + API_HOST);
+  private static final Logger              logger                     = LoggerFactory.getLogger(PornhubMovieMetadataProvider.class);
+  // the view page is ready for extraction as soon as the parser has passed the about tab and all globals we read are defined
+  private static final String              VIEW_PAGE_READY            = "() => { const player = document.querySelector('#player[data-video-id]');"
+      + " const aboutTab = document.querySelector('#hd-leftColVideoPage div.about-tab');"
+      + " return !!player && !!aboutTab && typeof VIDEO_SHOW !== 'undefined'"
+      + " && typeof window['flashvars_' + player.dataset.videoId] !== 'undefined'"
+      + " && !!document.querySelector('script[type=\"application/ld+json\"]')"
+      + " && (aboutTab.nextElementSibling !== null || document.readyState !== 'loading'); }";
+  // identifying a video only needs the player, the titles and the ld+json block, not the about tab further down
+  private static final String              IDENTIFY_PAGE_READY        = "() => !!document.querySelector('#player[data-video-id]')"
+      + " && typeof VIDEO_SHOW !== 'undefined' && !!document.querySelector('script[type=\"application/ld+json\"]')";
+  // the header only offers the login link to visitors who are not logged in
+  private static final String              LOGGED_OUT                 = "() => !!document.querySelector('#headerLoginLink')";
+  private static final String              LOGGED_IN                  = "() => document.readyState !== 'loading'"
+      + " && !document.querySelector('#headerLoginLink')";
+  // the counters and the ld+json block with the translated name come before the about tab, the player script with the titles after it
+  private static final byte[]              ABOUT_TAB                  = "about-tab".getBytes(StandardCharsets.US_ASCII);
+  // the tags follow the categories, the last translated field of the about tab
+  private static final byte[]              TAGS_WRAPPER               = "tagsWrapper".getBytes(StandardCharsets.US_ASCII);
+  private static final String              CONFIG_ID_MATCHER          = "ID Matcher";
+  private static final String              CONFIG_ACCOUNT             = "Pornhub Account";
+  private static final String              CONFIG_PASSWORD            = "Pornhub Password";
+  private static final String              CONFIG_HTTP_FAST_PATH      = "Use HTTP Fast Path";
+  private static final String              CONFIG_SCRAPE_TIER         = "Scrape Tier";
+  private static final String              CONFIG_LOCAL_IMAGES        = "Serve Person Images Locally";
+  private static final String              CONFIG_USE_CACHE           = "Use Metadata Cache";
+  private static final String              CONFIG_CACHE_TTL           = "Metadata Cache TTL (days)";
+  private static final String              CONFIG_CACHE_SIZE          = "Metadata Cache Size";
+  private static final String              CONFIG_SEARCH_CACHE_TTL    = "Search Cache TTL (min)";
+  private static final String              CONFIG_SEARCH_CACHE_SIZE   = "Search Cache Size";
+  private static final String              CONFIG_SEARCH_MAX_PAGES    = "Search Max Pages";
+  private static final String              CONFIG_SEARCH_MAX_RESULTS  = "Search Max Results";
+  private static final String              CONFIG_SEARCH_CONFIDENCE   = "Search Confidence (%)";
+  private static final String              CONFIG_JOURNAL             = "Use Scrape Journal";
+  private static final String              CONFIG_JOURNAL_RETENTION   = "Scrape Journal Retention (h)";
+  private static final String              CONFIG_OFFLINE_INDEX       = "Use Offline ID Index";
+  private static final String              CONFIG_OFFLINE_INDEX_TTL   = "Offline ID Index TTL (days)";
+  private static final String              CONFIG_BROWSER_POOL        = "Browser Pool Size";
+  private static final String              CONFIG_BROWSER_TIMEOUT     = "Browser Acquire Timeout (s)";
+  private static final String              CONFIG_BROWSER_IDLE        = "Browser Idle Shutdown (s)";
+  private static final String              CONFIG_BROWSER_MAX_PAGES   = "Browser Recycle After Pages";
+  private static final String              CONFIG_BROWSER_MAX_MEMORY  = "Browser Max Memory (MB)";
+  private static final String              CONFIG_BLOCKED_TYPES       = "Blocked Resource Types";
+  private static final String              CONFIG_BLOCKED_DOMAINS     = "Blocked Domains";
+  private static final String              CONFIG_PROXIES             = "Proxy Servers";
+  private static final String              CONFIG_BATCH_CONCURRENCY   = "Batch Concurrency";
+  private static final String              CONFIG_REQUEST_RATE        = "Max Requests per Second";
+  private static final String              CONFIG_MAX_RETRIES         = "Max Retries";
+  private static final String              CONFIG_METRICS_INTERVAL    = "Metrics Log Interval (s)";
+  private static final int                 DEFAULT_BROWSER_POOL       = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+  private static final int                 DEFAULT_BROWSER_TIMEOUT    = 300;
+  private static final int                 DEFAULT_BROWSER_IDLE       = 300;
+  private static final int                 DEFAULT_BROWSER_MAX_PAGES  = 500;
+  private static final int                 DEFAULT_BROWSER_MAX_MEMORY = 1536;
+  private static final String              DEFAULT_BLOCKED_TYPES      = "image,media,font,stylesheet,texttrack,manifest";
+  private static final String              DEFAULT_BLOCKED_DOMAINS    = "trafficjunky.com,trafficjunky.net,doubleclick.net,google-analytics.com,"
+      + "googletagmanager.com,googlesyndication.com";
+  private static final int                 DEFAULT_CACHE_TTL          = 30;
+  private static final int                 DEFAULT_CACHE_SIZE         = 50000;
+  private static final int                 DEFAULT_SEARCH_CACHE_TTL   = 60;
+  private static final int                 DEFAULT_SEARCH_CACHE_SIZE  = 1000;
+  private static final int                 DEFAULT_SEARCH_MAX_PAGES   = 3;
+  private static final int                 DEFAULT_SEARCH_MAX_RESULTS = 100;
+  private static final int                 DEFAULT_SEARCH_CONFIDENCE  = 90;
+  private static final int                 DEFAULT_JOURNAL_RETENTION  = 48;
+  private static final int                 DEFAULT_BATCH_CONCURRENCY  = 8;
+  private static final int                 DEFAULT_REQUEST_RATE       = 5;
+  private static final int                 DEFAULT_MAX_RETRIES        = 3;
+  private static final int                 DEFAULT_METRICS_INTERVAL   = 600;
+  private static final int                 DEFAULT_OFFLINE_INDEX_TTL  = 180;
+  private static final int                 MAX_PENDING_MATCHES        = 1000;
+  private final        PageExtractor       pageExtractor              = new PageExtractor();
+  private final        MediaProviderInfo   providerInfo;
+  private final        ScraperMetrics      metrics                    = new ScraperMetrics();
+  private final        BrowserPool         browserPool;
+  private final        RequestGovernor     requestGovernor;
+  private final        ProxyPool           proxyPool                  = new ProxyPool(metrics);
+  private final        int                 maxRetries;
+  private final        PornhubHttpClient   httpClient;
+  private final        VideoPageHtmlParser videoPageParser            = new VideoPageHtmlParser();
+  private final        ScraperStore        scraperStore;
+  private final        VideoPageCache      videoPageCache;
+  private final        StatisticsStore     statisticsStore;
+  private final        SearchResultCache   searchResultCache;
+  private final        ScrapeJournal       scrapeJournal;
+  private final        ViewKeyIndex        viewKeyIndex;
+  private final        LoginSession        loginSession;
+  private final        Object              loginLock                  = new Object();
+  private final Map<String, CompletableFuture<VideoPage>> prefetches = new ConcurrentHashMap<>();
+  // query and viewkey of the confident best result of recent searches, confirmed in the offline index when tmm scrapes exactly that pair
+  private final Map<String, Long> pendingMatches = boundedMap(MAX_PENDING_MATCHES);
+  private final SingleFlight<String, SearchWalk> searchFlight = new SingleFlight<>(() -> metrics.increment("search.joined"));
+  private final SingleFlight<String, VideoPage> fetchFlight = new SingleFlight<>(() -> metrics.increment("fetch.joined"));
+  private              ExecutorService     fetchExecutor;
+  private              ExecutorService     parseExecutor;
+  private              boolean             closed;
+  private volatile     int                 httpCookieGeneration       = -1;
+  private volatile     ViewKeyMatcher      viewKeyMatcher;
 
   public PornhubMovieMetadataProvider() {
     providerInfo = createProviderInfo();
-    playwright = Playwright.create();
-    browser = playwright.chromium().launch(new BrowserType.LaunchOptions().setHeadless(true));
+    metrics.register("ScraperMetrics");
+    Integer metricsInterval = providerInfo.getConfig().getValueAsInteger(CONFIG_METRICS_INTERVAL);
+    metrics.startReporting(metricsInterval == null ? DEFAULT_METRICS_INTERVAL : metricsInterval);
+    loginSession = new LoginSession(Paths.get(Globals.DATA_FOLDER, ID, "session.json"));
+    browserPool = new BrowserPool(getConfigInteger(CONFIG_BROWSER_POOL, DEFAULT_BROWSER_POOL),
+        getConfigInteger(CONFIG_BROWSER_TIMEOUT, DEFAULT_BROWSER_TIMEOUT), getConfigInteger(CONFIG_BROWSER_IDLE, DEFAULT_BROWSER_IDLE),
+        TimeUnit.SECONDS, ResourceBlocker.of(providerInfo.getConfig().getValue(CONFIG_BLOCKED_TYPES),
+        providerInfo.getConfig().getValue(CONFIG_BLOCKED_DOMAINS)), loginSession, metrics);
+    Integer retries = providerInfo.getConfig().getValueAsInteger(CONFIG_MAX_RETRIES);
+    maxRetries = retries == null || retries < 0 ? DEFAULT_MAX_RETRIES : retries;
+    requestGovernor = new RequestGovernor(getConfigInteger(CONFIG_REQUEST_RATE, DEFAULT_REQUEST_RATE), 4, 32);
+    httpClient = new PornhubHttpClient(API_URL, Duration.ofSeconds(30), requestGovernor, maxRetries, metrics, proxyPool);
+    scraperStore = ScraperStore.open(Paths.get(Globals.CACHE_FOLDER, ID, "scraper.mv"));
+    videoPageCache = new VideoPageCache(scraperStore, Duration.ofDays(getConfigInteger(CONFIG_CACHE_TTL, DEFAULT_CACHE_TTL)),
+        getConfigInteger(CONFIG_CACHE_SIZE, DEFAULT_CACHE_SIZE));
+    statisticsStore = new StatisticsStore(scraperStore);
+    Integer searchCacheTtl = providerInfo.getConfig().getValueAsInteger(CONFIG_SEARCH_CACHE_TTL);
+    searchResultCache = new SearchResultCache(Duration.ofMinutes(searchCacheTtl == null ? DEFAULT_SEARCH_CACHE_TTL : searchCacheTtl),
+        getConfigInteger(CONFIG_SEARCH_CACHE_SIZE, DEFAULT_SEARCH_CACHE_SIZE));
+    scrapeJournal = new ScrapeJournal(Paths.get(Globals.DATA_FOLDER, ID, "journal.jsonl"),
+        Duration.ofHours(getConfigInteger(CONFIG_JOURNAL_RETENTION, DEFAULT_JOURNAL_RETENTION)));
+    viewKeyIndex = new ViewKeyIndex(scraperStore, Duration.ofDays(getConfigInteger(CONFIG_OFFLINE_INDEX_TTL, DEFAULT_OFFLINE_INDEX_TTL)));
+    refreshSettings();
     // 注册关闭钩子
     Runtime.getRuntime().addShutdownHook(new Thread(this::close));
   }
@@ -64,9 +211,37 @@ public class PornhubMovieMetadataProvider implements IMovieMetadataProvider {
     info.setResourceBundle(ResourceBundle.getBundle("xyz.ifnotnull.tmm.scraper.pornhub.messages"));
 
     // create configuration properties
-    info.getConfig().addText(CONFIG_ID_MATCHER, "^(\\w+?)\\s*[|!@].*", false);
+    info.getConfig().addText(CONFIG_ID_MATCHER, MetadataUtils.DEFAULT_ID_MATCHER, false);
     info.getConfig().addText(CONFIG_ACCOUNT, "", false);
     info.getConfig().addText(CONFIG_PASSWORD, "", true);
+    info.getConfig().addBoolean(CONFIG_HTTP_FAST_PATH, true);
+    info.getConfig().addSelect(CONFIG_SCRAPE_TIER, new String[] { "identify", "core", "full" }, "full");
+    // off by default, the local urls end up in the NFO files, see personThumb()
+    info.getConfig().addBoolean(CONFIG_LOCAL_IMAGES, false);
+    info.getConfig().addBoolean(CONFIG_USE_CACHE, true);
+    info.getConfig().addInteger(CONFIG_CACHE_TTL, DEFAULT_CACHE_TTL);
+    info.getConfig().addInteger(CONFIG_CACHE_SIZE, DEFAULT_CACHE_SIZE);
+    info.getConfig().addInteger(CONFIG_SEARCH_CACHE_TTL, DEFAULT_SEARCH_CACHE_TTL);
+    info.getConfig().addInteger(CONFIG_SEARCH_CACHE_SIZE, DEFAULT_SEARCH_CACHE_SIZE);
+    info.getConfig().addInteger(CONFIG_SEARCH_MAX_PAGES, DEFAULT_SEARCH_MAX_PAGES);
+    info.getConfig().addInteger(CONFIG_SEARCH_MAX_RESULTS, DEFAULT_SEARCH_MAX_RESULTS);
+    info.getConfig().addInteger(CONFIG_SEARCH_CONFIDENCE, DEFAULT_SEARCH_CONFIDENCE);
+    info.getConfig().addBoolean(CONFIG_JOURNAL, true);
+    info.getConfig().addInteger(CONFIG_JOURNAL_RETENTION, DEFAULT_JOURNAL_RETENTION);
+    info.getConfig().addBoolean(CONFIG_OFFLINE_INDEX, true);
+    info.getConfig().addInteger(CONFIG_OFFLINE_INDEX_TTL, DEFAULT_OFFLINE_INDEX_TTL);
+    info.getConfig().addInteger(CONFIG_BROWSER_POOL, DEFAULT_BROWSER_POOL);
+    info.getConfig().addInteger(CONFIG_BROWSER_TIMEOUT, DEFAULT_BROWSER_TIMEOUT);
+    info.getConfig().addInteger(CONFIG_BROWSER_IDLE, DEFAULT_BROWSER_IDLE);
+    info.getConfig().addInteger(CONFIG_BROWSER_MAX_PAGES, DEFAULT_BROWSER_MAX_PAGES);
+    info.getConfig().addInteger(CONFIG_BROWSER_MAX_MEMORY, DEFAULT_BROWSER_MAX_MEMORY);
+    info.getConfig().addText(CONFIG_BLOCKED_TYPES, DEFAULT_BLOCKED_TYPES, false);
+    info.getConfig().addText(CONFIG_BLOCKED_DOMAINS, DEFAULT_BLOCKED_DOMAINS, false);
+    info.getConfig().addText(CONFIG_PROXIES, "", false);
+    info.getConfig().addInteger(CONFIG_BATCH_CONCURRENCY, DEFAULT_BATCH_CONCURRENCY);
+    info.getConfig().addInteger(CONFIG_REQUEST_RATE, DEFAULT_REQUEST_RATE);
+    info.getConfig().addInteger(CONFIG_MAX_RETRIES, DEFAULT_MAX_RETRIES);
+    info.getConfig().addInteger(CONFIG_METRICS_INTERVAL, DEFAULT_METRICS_INTERVAL);
 
     /*info.getConfig().addBoolean("boolean", true);
     info.getConfig().addInteger("integer", 10);
@@ -78,11 +253,123 @@ public class PornhubMovieMetadataProvider implements IMovieMetadataProvider {
     return info;
   }
 
-  private void close() {
-    logger.info("PornhubMovieMetadataProvider closing...");
+  private int getConfigInteger(String key, int defaultValue) {
+    Integer value = providerInfo.getConfig().getValueAsInteger(key);
+    return value == null || value <= 0 ? defaultValue : value;
+  }
+
+  /**
+   * @return the value of an option where 0 means "no limit"
+   */
+  private int getConfigLimit(String key, int defaultValue) {
+    Integer value = providerInfo.getConfig().getValueAsInteger(key);
+    return value == null || value < 0 ? defaultValue : value;
+  }
+
+  /**
+   * applies the settings which can be changed without restarting tinyMediaManager
+   */
+  private void refreshSettings() {
+    requestGovernor.setRatePerSecond(getConfigInteger(CONFIG_REQUEST_RATE, DEFAULT_REQUEST_RATE));
+    proxyPool.configure(providerInfo.getConfig().getValue(CONFIG_PROXIES));
+    browserPool.setRecycleLimits(getConfigLimit(CONFIG_BROWSER_MAX_PAGES, DEFAULT_BROWSER_MAX_PAGES),
+        getConfigLimit(CONFIG_BROWSER_MAX_MEMORY, DEFAULT_BROWSER_MAX_MEMORY) * 1024L * 1024L);
+    boolean hasPassword = StringUtils.isNotEmpty(providerInfo.getConfig().getValue(CONFIG_PASSWORD));
+    loginSession.setAccount(hasPassword ? providerInfo.getConfig().getValue(CONFIG_ACCOUNT) : null);
+    // the fast path sends the cookies of the browser session as well
+    int generation = loginSession.getGeneration();
+    if (generation != httpCookieGeneration) {
+      httpCookieGeneration = generation;
+      httpClient.setSessionCookies(loginSession.cookies());
+    }
+  }
+
+  private ScrapeTier scrapeTier() {
+    return ScrapeTier.of(providerInfo.getConfig().getValue(CONFIG_SCRAPE_TIER), ScrapeTier.FULL);
+  }
+
+  private boolean isEnabled(String key) {
+    return !Boolean.FALSE.equals(providerInfo.getConfig().getValueAsBool(key));
+  }
+
+  /**
+   * @return true if pages are fetched with the HTTP client first, it cannot go through SOCKS proxies
+   */
+  private boolean useFastPath() {
+    return isEnabled(CONFIG_HTTP_FAST_PATH) && httpClient.isUsable();
+  }
+
+  private synchronized ExecutorService fetchExecutor() {
+    if (fetchExecutor == null) {
+      fetchExecutor = Executors.newFixedThreadPool(getConfigInteger(CONFIG_BATCH_CONCURRENCY, DEFAULT_BATCH_CONCURRENCY),
+          new DaemonThreadFactory("pornhub-fetch"));
+    }
+    return fetchExecutor;
+  }
+
+  private synchronized ExecutorService parseExecutor() {
+    if (parseExecutor == null) {
+      parseExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory("pornhub-parse"));
+    }
+    return parseExecutor;
+  }
+
+  /**
+   * Shuts down the browsers and background threads and closes the cache, called by a shutdown hook.
+   */
+  public void close() {
     // 关闭资源
-    browser.close();
-    playwright.close();
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      logger.info("PornhubMovieMetadataProvider closing...");
+      if (fetchExecutor != null) {
+        fetchExecutor.shutdownNow();
+      }
+      if (parseExecutor != null) {
+        parseExecutor.shutdownNow();
+      }
+    }
+    browserPool.close();
+    scraperStore.close();
+    scrapeJournal.close();
+    logger.info(metrics.getSummary());
+    metrics.close();
+  }
+
+  /**
+   * Removes a video from the metadata cache, the next scrape fetches it from the site again.
+   *
+   * @param viewKey
+   *     the viewkey of the video
+   */
+  public void invalidateCache(String viewKey) {
+    videoPageCache.invalidate(viewKey);
+  }
+
+  /**
+   * @return the phase timers and counters of this provider, also published via JMX
+   */
+  public ScraperMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Leases a browser whose context goes through the proxy exit with the shortest expected wait, directly if no proxy is configured.
+   */
+  private BrowserPool.Lease acquireBrowser(String language) throws ScrapeException {
+    try {
+      return browserPool.acquire(language, proxyPool.select());
+    }
+    catch (TimeoutException e) {
+      throw new ScrapeException(e);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ScrapeException(e);
+    }
   }
 
   @Override
@@ -98,26 +385,26 @@ public class PornhubMovieMetadataProvider implements IMovieMetadataProvider {
   @Override
   public SortedSet<MediaSearchResult> search(MovieSearchAndScrapeOptions options) throws ScrapeException {
     logger.debug("search(): {}", options);
+    refreshSettings();
     SortedSet<MediaSearchResult> results = new TreeSet<>();
 
-    String phId = options.getIdAsString(getId());
-
-    // we hope got an id from options but not
+    String phId = findId(options);
     if (StringUtils.isEmpty(phId)) {
-      // try if filename contains an id
-      String idMatcher = getProviderInfo().getConfig().getValue(CONFIG_ID_MATCHER);
-      Matcher matcher = Pattern.compile(idMatcher).matcher(options.getSearchQuery());
-      if (matcher.matches()) {
-        phId = matcher.group(1);
-      }
+      phId = indexedId(options);
     }
-
     if (StringUtils.isNotEmpty(phId)) {
       options.setId(getId(), phId);
-      MediaMetadata metadata = getMetadata(options);
-      if (metadata != null) {
+      // the result only has to identify the video, a deeper scrape later builds on the same page
+      VideoPage videoPage = loadVideoPage(phId, options.getLanguage().getLanguage(), ScrapeTier.IDENTIFY);
+      if (videoPage != null) {
+        ScrapeTier tier = scrapeTier();
+        boolean deepEnough = videoPage.covers(tier);
+        MediaMetadata metadata = toMediaMetadata(videoPage, options, deepEnough ? tier : ScrapeTier.IDENTIFY);
         MediaSearchResult result = metadata.toSearchResult(MediaType.MOVIE);
-        result.setMetadata(metadata);
+        // the raw page usually has everything, then tinyMediaManager does not have to call getMetadata() at all
+        if (deepEnough) {
+          result.setMetadata(metadata);
+        }
         for (MediaArtwork mediaArtwork : metadata.getMediaArt(MediaArtwork.MediaArtworkType.POSTER)) {
           result.setPosterUrl(mediaArtwork.getOriginalUrl());
           break;
@@ -131,157 +418,909 @@ public class PornhubMovieMetadataProvider implements IMovieMetadataProvider {
     // no id yet, search via filename
     String searchString = MetadataUtil.removeNonSearchCharacters(options.getSearchQuery());
     if (StringUtils.isNotEmpty(searchString)) {
-      synchronized (browser) {
-        try (Page page = browser.newPage(new Browser.NewPageOptions().setLocale(options.getLanguage().getLanguage())
-            .setProxy(ProxySettings.INSTANCE.getHost() + ":" + ProxySettings.INSTANCE.getPort()))) {
-          page.navigate(API_URL);
-
-          //          Locator searchBar = page.getByPlaceholder("Search Pornhub");
-          Locator searchBar = page.locator("#searchInput");
-          searchBar.fill(searchString);
-          searchBar.press("Enter");
-
-          page.waitForLoadState();
-
-          // find result list element
-          List<Locator> searchResults = page.locator("#videoSearchResult")
-              .getByRole(AriaRole.LISTITEM)
-              .filter(new Locator.FilterOptions().setHas(page.getByRole(AriaRole.IMG)))
-              .all();
-
-          for (Locator result : searchResults) {
-            Locator img = result.getByRole(AriaRole.IMG);
-            String title = img.getAttribute("data-title");
-
-            MediaSearchResult sr = new MediaSearchResult(getId(), MediaType.MOVIE);
-            sr.setId(getId(), result.getAttribute("data-video-vkey"));
-            sr.setId(getId() + "_id", result.getAttribute("data-video-id"));
-            sr.setTitle(title);
-            sr.setOriginalTitle(title);
-
-            String addedDate = result.locator(".added").textContent().trim();
-            Matcher numRegex = ADD_DATE_REGEX.matcher(addedDate);
-            LocalDateTime time = LocalDateTime.now();
-            if (numRegex.find()) {
-              switch (numRegex.group(2)) {
-                case "年":
-                case "year":
-                case "years":
-                  time = time.minusYears(Long.parseLong(numRegex.group(1)));
-                  break;
-                case "月":
-                case "month":
-                case "months":
-                  time = time.minusMonths(Long.parseLong(numRegex.group(1)));
-                  break;
-                case "日":
-                case "day":
-                case "days":
-                  time = time.minusDays(Long.parseLong(numRegex.group(1)));
-                  break;
-                case "小时":
-                case "hour":
-                case "hours":
-                  time = time.minusHours(Long.parseLong(numRegex.group(1)));
-                  break;
-                case "分钟":
-                case "minute":
-                case "minutes":
-                  time = time.minusMinutes(Long.parseLong(numRegex.group(1)));
-                  break;
-                default:
-                  break;
-              }
-              sr.setYear(time.getYear());
-            }
-
-            // calculate score self
-            sr.calculateScore(options);
-
-            sr.setPosterUrl(img.getAttribute("src"));
-            sr.setOverview("null for now");
-            results.add(sr);
+      long start = System.nanoTime();
+      // every item is scored once: while the result pages are walked and for the result set
+      Map<SearchResultItem, MediaSearchResult> scored = new IdentityHashMap<>();
+      Function<SearchResultItem, MediaSearchResult> score = item -> scored.computeIfAbsent(item, i -> toSearchResult(i, options));
+      float confidence = getConfigInteger(CONFIG_SEARCH_CONFIDENCE, DEFAULT_SEARCH_CONFIDENCE) / 100f;
+      try {
+        SearchResultItem best = null;
+        for (SearchResultItem item : searchItems(searchString, options.getLanguage().getLanguage(),
+            page -> page.stream().anyMatch(item -> score.apply(item).getScore() >= confidence))) {
+          results.add(score.apply(item));
+          if (best == null || score.apply(item).getScore() > score.apply(best).getScore()) {
+            best = item;
           }
         }
+        // only the match tinyMediaManager takes on its own is remembered, not every candidate the user looks at in the chooser
+        if (best != null && score.apply(best).getScore() >= confidence) {
+          pendingMatches.put(pendingKey(options.getSearchQuery(), best.getViewKey()), System.nanoTime());
+        }
+      }
+      finally {
+        metrics.record("search", start);
       }
     }
 
     return results;
   }
 
+  /**
+   * @param confident
+   *     tells from the new results of a page whether the search can stop, only asked if the site is searched
+   * @return the results of the query from the cache, the journal of an earlier batch, an identical search which is already running or
+   *     from the site
+   */
+  private List<SearchResultItem> searchItems(String searchString, String language, Predicate<List<SearchResultItem>> confident)
+      throws ScrapeException {
+    List<SearchResultItem> items = searchResultCache.get(searchString, language);
+    if (items != null) {
+      metrics.increment("search.cache.hit");
+      return items;
+    }
+    boolean journal = isEnabled(CONFIG_JOURNAL);
+    // a search from before a restart, as fresh as the search result cache would serve it
+    items = journal ? scrapeJournal.getResolved(searchString, language, searchResultCache.getTtl()) : null;
+    if (items != null) {
+      metrics.increment("search.journal.hit");
+      searchResultCache.put(searchString, language, items);
+      return items;
+    }
+    try {
+      SearchWalk walk = searchFlight.execute(SearchResultCache.key(searchString, language),
+          () -> walkSearchResults(searchString, language, confident, journal));
+      // a walk stopped on the confidence of a joined caller, whose options score the results differently, may lack the match of this one
+      if (walk.stoppedEarly && !confident.test(walk.items)) {
+        metrics.increment("search.rewalked");
+        walk = walkSearchResults(searchString, language, confident, journal);
+      }
+      return walk.items;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ScrapeException(e);
+    }
+  }
+
+  /**
+   * Searches the site and caches the results of a complete walk. A walk stopped on the confidence of the caller depends on its options,
+   * so it is not cached under the query.
+   */
+  private SearchWalk walkSearchResults(String searchString, String language, Predicate<List<SearchResultItem>> confident,
+      boolean journal) throws ScrapeException {
+    AtomicBoolean stoppedEarly = new AtomicBoolean();
+    List<SearchResultItem> fetched = fetchSearchResults(searchString, language, confident, stoppedEarly);
+    // failed searches are not cached
+    if (fetched == null) {
+      return new SearchWalk(Collections.emptyList(), false);
+    }
+    if (!stoppedEarly.get()) {
+      searchResultCache.put(searchString, language, fetched);
+      if (journal) {
+        scrapeJournal.resolved(searchString, language, fetched);
+      }
+    }
+    return new SearchWalk(fetched, stoppedEarly.get());
+  }
+
+  /**
+   * Walks the result pages of a query one after the other. The walk stops as soon as a page brings a result the caller is confident
+   * about, a page brings nothing new, or the page or result budget is used up.
+   *
+   * @param confident
+   *     tells from the new results of a page whether the search can stop
+   * @param stoppedEarly
+   *     set if the walk stopped because the caller was confident
+   * @return the results of all pages read, null if the first page failed
+   */
+  private List<SearchResultItem> fetchSearchResults(String searchString, String language, Predicate<List<SearchResultItem>> confident,
+      AtomicBoolean stoppedEarly) throws ScrapeException {
+    int maxPages = Math.max(1, getConfigInteger(CONFIG_SEARCH_MAX_PAGES, DEFAULT_SEARCH_MAX_PAGES));
+    int maxResults = Math.max(1, getConfigInteger(CONFIG_SEARCH_MAX_RESULTS, DEFAULT_SEARCH_MAX_RESULTS));
+    String searchUrl = API_URL + "/video/search?search=" + URLEncoder.encode(searchString, StandardCharsets.UTF_8);
+    // by viewkey, later pages repeat promoted videos
+    Map<String, SearchResultItem> items = new LinkedHashMap<>();
+    try (BrowserPool.Lease lease = acquireBrowser(language); Page page = lease.newPage()) {
+      for (int pageNumber = 1; pageNumber <= maxPages && items.size() < maxResults; pageNumber++) {
+        // open the result page directly instead of typing into the search bar of the start page, we only read the DOM
+        if (!navigate(lease, page, pageNumber == 1 ? searchUrl : searchUrl + "&page=" + pageNumber, WaitUntilState.DOMCONTENTLOADED)) {
+          // the site answers 404 after the last page
+          return pageNumber == 1 ? null : new ArrayList<>(items.values());
+        }
+
+        long start = System.nanoTime();
+        List<SearchResultItem> pageItems;
+        try {
+          pageItems = pageExtractor.extractSearchResults(page);
+          metrics.record("search.extract", start);
+        }
+        catch (JsonProcessingException e) {
+          metrics.increment("failure.extract");
+          logger.error("parse error", e);
+          return pageNumber == 1 ? null : new ArrayList<>(items.values());
+        }
+        metrics.increment("search.pages");
+
+        List<SearchResultItem> added = new ArrayList<>();
+        for (SearchResultItem item : pageItems) {
+          if (item.getViewKey() != null && items.size() < maxResults && items.putIfAbsent(item.getViewKey(), item) == null) {
+            added.add(item);
+          }
+        }
+        if (added.isEmpty()) {
+          break;
+        }
+        if (confident.test(added)) {
+          metrics.increment("search.confident");
+          stoppedEarly.set(true);
+          break;
+        }
+      }
+    }
+    return new ArrayList<>(items.values());
+  }
+
   @Override
   public MediaMetadata getMetadata(MovieSearchAndScrapeOptions options) throws ScrapeException {
     logger.debug("getMetadata(): {}", options);
+    refreshSettings();
     if (options.getSearchResult() != null && options.getSearchResult().getMediaMetadata() != null && getId().equals(
         options.getSearchResult().getMediaMetadata().getProviderId())) {
-      return options.getSearchResult().getMediaMetadata();
+      MediaMetadata metadata = options.getSearchResult().getMediaMetadata();
+      updateIndex(options.getSearchQuery(), metadata.getIdAsString(getId()));
+      return metadata;
     }
 
-    MediaMetadata md = new MediaMetadata(getId());
-    md.setScrapeOptions(options);
-
     String phId = options.getIdAsString(getId());
     if (StringUtils.isEmpty(phId)) {
       throw new MissingIdException(ID);
     }
-    synchronized (browser) {
-      try (Page page = browser.newPage(new Browser.NewPageOptions().setLocale(options.getLanguage().getLanguage())
-          .setProxy(ProxySettings.INSTANCE.getHost() + ":" + ProxySettings.INSTANCE.getPort()))) {
-        // 设置页面请求拦截器
-        page.onResponse(response -> {
-          if (response.status() > 400) {
-            logger.warn("Response {}:{}, url: {}", response.status(), response.statusText(), response.url());
-            throw new PlaywrightException("response code: " + response.status());
-          }
-        });
-        String url = API_URL + "/" + "view_video.php?viewkey=" + phId;
-        page.navigate(url);
-        page.waitForLoadState();
 
-        // todo: login logic
-        /*page.locator("#headerLoginLink").click();
-        page.locator("#topRightProfileMenu > div > a.logIn").click();
-        page.locator("#usernameModal").fill(getProviderInfo().getConfig().getValue(CONFIG_ACCOUNT));
-        page.locator("#passwordModal").fill(getProviderInfo().getConfig().getValue(CONFIG_PASSWORD));
-        page.locator(".rememberMeText").click();
-        page.locator("#signinSubmit").click();*/
+    long start = System.nanoTime();
+    try {
+      ScrapeTier tier = scrapeTier();
+      VideoPage videoPage = loadVideoPage(phId, options.getLanguage().getLanguage(), tier);
+      if (videoPage == null) {
+        return null;
+      }
+      updateIndex(options.getSearchQuery(), phId);
+      return toMediaMetadata(videoPage, options, tier);
+    }
+    finally {
+      metrics.record("scrape", start);
+    }
+  }
 
-        md.setId(getId(), options.getIdAsString(getId()));
-        md.setId(getId() + "_id", page.locator("#player").getAttribute("data-video-id"));
+  /**
+   * @return the page from the cache, the prefetched pages or the site, null if it could not be fetched
+   */
+  private VideoPage loadVideoPage(String phId, String language, ScrapeTier tier) throws ScrapeException {
+    boolean useCache = isEnabled(CONFIG_USE_CACHE);
+    VideoPage known = useCache ? videoPageCache.get(phId, language) : null;
+    if (known != null && known.covers(tier)) {
+      metrics.increment(ScraperMetrics.CACHE_HIT);
+      return known;
+    }
+    VideoPage prefetched = takePrefetched(phId, language);
+    if (prefetched != null && prefetched.covers(tier)) {
+      return prefetched;
+    }
+    if (known == null) {
+      known = prefetched;
+    }
+
+    metrics.increment(ScraperMetrics.CACHE_MISS);
+    // a shallower page means the raw html has been parsed before and lacked what this tier needs, go to the browser right away
+    boolean rawPageKnown = known != null;
+    VideoPage shared = useCache && useFastPath() ? sharedPage(phId, language, tier) : null;
+    try {
+      // the search short-circuit and tinyMediaManager may ask for the same video at the same time, only one of them fetches it
+      return fetchFlight.execute(phId + "|" + language + "|" + tier, () -> {
+        VideoPage fetched;
         try {
-          parseLdJson(md, page, options);
+          fetched = shared == null ? null : fetchTranslation(shared, phId, language, tier);
+          if (fetched == null) {
+            fetched = fetchVideoPage(phId, language, tier, rawPageKnown);
+          }
+        }
+        catch (ScrapeException | RuntimeException e) {
+          journal(phId, null, e);
+          throw e;
+        }
+        journal(phId, fetched, null);
+        if (fetched != null && useCache) {
+          videoPageCache.put(phId, language, fetched);
+        }
+        return fetched;
+      });
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ScrapeException(e);
+    }
+  }
 
-          parseFlashvars(md, page, options);
+  /**
+   * Records the outcome of a fetch from the site in the scrape journal.
+   *
+   * @param error
+   *     why the fetch failed, null if it returned
+   */
+  private void journal(String phId, VideoPage videoPage, Throwable error) {
+    if (!isEnabled(CONFIG_JOURNAL)) {
+      return;
+    }
+    if (videoPage != null) {
+      scrapeJournal.scraped(phId, videoPage.getTier());
+    }
+    else {
+      Throwable cause = error == null ? null : ExceptionUtils.getRootCause(error);
+      scrapeJournal.failed(phId, cause == null ? "noPage" : cause.getClass().getSimpleName());
+    }
+  }
 
-          parseVideoShow(md, page, options);
+  /**
+   * Fetches the given movies in the background, so that the following {@link #getMetadata(MovieSearchAndScrapeOptions)} calls for them
+   * do not wait for the site. Downloading, extracting and caching of different movies overlap, but at most "Batch Concurrency" pages
+   * are downloaded at the same time.
+   * <p>
+   * Movies which are cached already are skipped, so are movies which failed in an earlier batch as long as their backoff in the scrape
+   * journal is not over. The progress of the batch is logged.
+   *
+   * @param optionsList
+   *     the movies to fetch, entries without a Pornhub id are skipped
+   * @return a future which completes once every movie has been fetched or has failed
+   */
+  public CompletableFuture<Void> prefetch(Collection<MovieSearchAndScrapeOptions> optionsList) {
+    refreshSettings();
+    boolean useCache = isEnabled(CONFIG_USE_CACHE);
+    boolean journal = isEnabled(CONFIG_JOURNAL);
+    ScrapeTier tier = scrapeTier();
+    // key -> viewkey, the progress counts every video once
+    Map<String, String> batch = new LinkedHashMap<>();
+    for (MovieSearchAndScrapeOptions options : optionsList) {
+      String phId = findId(options);
+      if (StringUtils.isEmpty(phId)) {
+        phId = indexedId(options);
+      }
+      if (StringUtils.isNotEmpty(phId)) {
+        batch.putIfAbsent(phId + "|" + options.getLanguage().getLanguage(), phId);
+      }
+    }
 
-          parsePageElements(md, page);
+    BatchProgress progress = new BatchProgress(batch.size());
+    List<CompletableFuture<VideoPage>> futures = new ArrayList<>();
+    batch.forEach((key, phId) -> {
+      String language = StringUtils.substringAfter(key, "|");
+      VideoPage cached = useCache ? videoPageCache.get(phId, language) : null;
+      if (cached != null && cached.covers(tier)) {
+        progress.skipped();
+        return;
+      }
+      long backoff = journal ? scrapeJournal.getBackoffMillis(phId) : 0;
+      if (backoff > 0) {
+        metrics.increment("journal.deferred");
+        logger.debug("{} failed {} times ({}), next attempt in {}s", phId, scrapeJournal.getFailures(phId),
+            scrapeJournal.getLastCause(phId), TimeUnit.MILLISECONDS.toSeconds(backoff));
+        progress.skipped();
+        return;
+      }
+      VideoPage shared = useCache && useFastPath() ? sharedPage(phId, language, tier) : null;
+      CompletableFuture<VideoPage> future = prefetches.computeIfAbsent(key,
+          k -> startPrefetch(k, phId, language, tier, useCache, shared));
+      future.thenAccept(videoPage -> {
+        if (videoPage == null) {
+          progress.failed();
         }
-        catch (JsonProcessingException e) {
-          logger.error("parse error", e);
+        else {
+          progress.scraped();
+        }
+      });
+      futures.add(future);
+    });
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+  }
+
+  /**
+   * @param shared
+   *     the page in another language, if there is one only the translated fields are downloaded and extracted
+   */
+  private CompletableFuture<VideoPage> startPrefetch(String key, String phId, String language, ScrapeTier tier, boolean useCache,
+      VideoPage shared) {
+    String url = viewUrl(phId);
+    boolean fastPath = useFastPath();
+    byte[] stopMarker = shared == null ? null : translationEnd(tier);
+
+    // download -> extract -> (browser fallback) -> cache, every stage runs on the executor that fits its work
+    CompletableFuture<VideoPage> future = CompletableFuture.supplyAsync(
+            () -> fastPath ? fetchHtmlUnchecked(url, language, stopMarker) : null, fetchExecutor())
+        .thenApplyAsync(html -> html == null ? null : shared == null ? parseHtml(phId, html) : translate(shared, phId, html, tier),
+            parseExecutor())
+        .thenCompose(videoPage -> {
+          if (videoPage != null && videoPage.isComplete(tier)) {
+            return CompletableFuture.completedFuture(videoPage);
+          }
+          return CompletableFuture.supplyAsync(() -> fetchVideoPageBrowserUnchecked(phId, url, language, tier), fetchExecutor());
+        })
+        .whenComplete((videoPage, e) -> journal(phId, videoPage, e))
+        .exceptionally(e -> {
+          logger.warn("could not prefetch {}: {}", phId, e.getMessage());
           return null;
+        });
+
+    future.thenAccept(videoPage -> {
+      if (videoPage != null && useCache) {
+        videoPageCache.put(phId, language, videoPage);
+      }
+      // the cache serves it from now on, failures are retried by getMetadata()
+      if (videoPage == null || useCache) {
+        prefetches.remove(key);
+      }
+    });
+    return future;
+  }
+
+  private VideoPage takePrefetched(String phId, String language) throws ScrapeException {
+    CompletableFuture<VideoPage> future = prefetches.remove(phId + "|" + language);
+    if (future == null) {
+      return null;
+    }
+    try {
+      VideoPage videoPage = future.get();
+      if (videoPage != null) {
+        metrics.increment(ScraperMetrics.PREFETCH_HIT);
+        logger.debug("serving {} from the prefetched pages", phId);
+      }
+      return videoPage;
+    }
+    catch (ExecutionException e) {
+      return null;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ScrapeException(e);
+    }
+  }
+
+  /**
+   * Refreshes the votes, views and likes of known videos without scraping them. Every video costs one conditional request for the head
+   * of its page: unchanged pages (304) are not sent at all, and the download of the others stops as soon as the counters have been
+   * read. The cached pages of changed videos get the new counters as well.
+   *
+   * @param viewKeys
+   *     the videos to refresh
+   * @param language
+   *     the page language, the counters are the same in all of them
+   * @return a future with the statistics of the videos whose counters have changed since their last refresh or which have never been
+   *     refreshed before, keyed by viewkey
+   */
+  public CompletableFuture<Map<String, VideoStatistics>> refreshStatistics(Collection<String> viewKeys, String language) {
+    refreshSettings();
+    Map<String, VideoStatistics> changed = new ConcurrentHashMap<>();
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (String viewKey : new LinkedHashSet<>(viewKeys)) {
+      futures.add(CompletableFuture.runAsync(() -> {
+        VideoStatistics statistics = refreshStatistics(viewKey, language);
+        if (statistics != null) {
+          changed.put(viewKey, statistics);
         }
+      }, fetchExecutor()));
+    }
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> changed);
+  }
+
+  /**
+   * @return the new statistics, null if they have not changed or could not be read
+   */
+  private VideoStatistics refreshStatistics(String viewKey, String language) {
+    long start = System.nanoTime();
+    VideoStatistics known = statisticsStore.get(viewKey);
+    Map<String, String> headers = new HashMap<>();
+    if (known != null && known.getEtag() != null) {
+      headers.put("If-None-Match", known.getEtag());
+    }
+    if (known != null && known.getLastModified() != null) {
+      headers.put("If-Modified-Since", known.getLastModified());
+    }
+    try {
+      PornhubHttpClient.Result result = httpClient.get(viewUrl(viewKey), language, headers, ABOUT_TAB);
+      if (result.isNotModified()) {
+        metrics.increment("statistics.notModified");
+        return null;
       }
+      if (!result.isOk()) {
+        logger.debug("Response {}, url: {}", result.getStatus(), result.getUrl());
+        return null;
+      }
+
+      VideoPage fresh = videoPageParser.parse(viewKey, result.getBodyBytes());
+      VideoStatistics statistics = new VideoStatistics();
+      statistics.setViewKey(viewKey);
+      statistics.setVotesUp(fresh.getVotesUp());
+      statistics.setVotesDown(fresh.getVotesDown());
+      if (fresh.getLdJson() != null) {
+        statistics.setViews(MetadataUtils.interactionCount(fresh.getLdJson().getInteractionStatistic(), "WatchAction"));
+        statistics.setLikes(MetadataUtils.interactionCount(fresh.getLdJson().getInteractionStatistic(), "LikeAction"));
+      }
+      statistics.setEtag(result.getHeader("ETag"));
+      statistics.setLastModified(result.getHeader("Last-Modified"));
+      statistics.setCheckedAt(System.currentTimeMillis());
+      if (statistics.isEmpty()) {
+        metrics.increment("failure.statistics");
+        logger.debug("no counters found on the page of {}", viewKey);
+        return null;
+      }
+
+      statisticsStore.put(statistics);
+      if (statistics.sameCounts(known)) {
+        metrics.increment("statistics.unchanged");
+        return null;
+      }
+      videoPageCache.update(viewKey, videoPage -> {
+        videoPage.setVotesUp(fresh.getVotesUp());
+        videoPage.setVotesDown(fresh.getVotesDown());
+        if (videoPage.getLdJson() != null && fresh.getLdJson() != null) {
+          videoPage.getLdJson().setInteractionStatistic(fresh.getLdJson().getInteractionStatistic());
+        }
+      });
+      metrics.increment("statistics.changed");
+      return statistics;
+    }
+    catch (IOException e) {
+      logger.debug("could not refresh the statistics of {}: {}", viewKey, e.getMessage());
+      return null;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+    finally {
+      metrics.record("statistics", start);
     }
+  }
 
-    return md;
+  private String findId(MovieSearchAndScrapeOptions options) {
+    String phId = options.getIdAsString(getId());
+
+    // we hope got an id from options but not
+    if (StringUtils.isEmpty(phId) && StringUtils.isNotEmpty(options.getSearchQuery())) {
+      // try if filename contains an id
+      phId = viewKeyMatcher().find(options.getSearchQuery());
+    }
+    return phId;
   }
 
-  private void parseVideoShow(MediaMetadata md, Page page, MovieSearchAndScrapeOptions options) {
-    Map<String, Object> videoShow = (Map<String, Object>) page.evaluate("VIDEO_SHOW");
+  /**
+   * @return the viewkey the search query was matched to before or null
+   */
+  private String indexedId(MovieSearchAndScrapeOptions options) {
+    String query = options.getSearchQuery();
+    if (StringUtils.isEmpty(query) || !isEnabled(CONFIG_OFFLINE_INDEX)) {
+      return null;
+    }
+    String phId = viewKeyIndex.resolve(query);
+    if (phId != null) {
+      metrics.increment("index.hit");
+    }
+    return phId;
+  }
 
-    md.setTitle((String) videoShow.get("videoTitleTranslated"));
-    md.setOriginalTitle((String) videoShow.get("videoTitleOriginal"));
-    md.setOriginalLanguage(options.getLanguage().getLanguage());
+  /**
+   * Keeps the offline index in line with what is scraped for a query: the confident best result of its search is confirmed, and a
+   * match is dropped when another video than the indexed one is scraped, i.e. the user picked a different result.
+   *
+   * @param query
+   *     the search query of the scraped movie
+   * @param phId
+   *     the viewkey which is scraped
+   */
+  private void updateIndex(String query, String phId) {
+    if (StringUtils.isEmpty(query) || StringUtils.isEmpty(phId)) {
+      return;
+    }
+    boolean confident = pendingMatches.remove(pendingKey(query, phId)) != null;
+    if (!isEnabled(CONFIG_OFFLINE_INDEX)) {
+      return;
+    }
+    String indexed = viewKeyIndex.resolve(query);
+    if (indexed != null && !indexed.equals(phId)) {
+      viewKeyIndex.invalidate(query);
+      metrics.increment("index.invalidated");
+      logger.debug("'{}' was scraped as {}, dropped its match {}", query, phId, indexed);
+    }
+    // the next scrape of the file needs no search
+    if (confident) {
+      viewKeyIndex.confirm(query, phId);
+    }
+  }
+
+  private static String pendingKey(String query, String viewKey) {
+    return ViewKeyIndex.normalize(query) + "|" + viewKey;
+  }
+
+  /**
+   * @return a synchronized map which drops its least recently used entries beyond the maximum size
+   */
+  private static <V> Map<String, V> boundedMap(int maxSize) {
+    return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+        return size() > maxSize;
+      }
+    });
+  }
+
+  /**
+   * @return the matcher of the configured "ID Matcher", compiled again only when the setting changes
+   */
+  private ViewKeyMatcher viewKeyMatcher() {
+    String configured = providerInfo.getConfig().getValue(CONFIG_ID_MATCHER);
+    ViewKeyMatcher matcher = viewKeyMatcher;
+    if (matcher == null || !Objects.equals(configured, matcher.getConfigured())) {
+      matcher = new ViewKeyMatcher(configured);
+      viewKeyMatcher = matcher;
+    }
+    return matcher;
+  }
+
+  private static String viewUrl(String phId) {
+    return API_URL + "/" + "view_video.php?viewkey=" + phId;
+  }
+
+  private VideoPage fetchVideoPage(String phId, String language, ScrapeTier tier, boolean rawPageKnown) throws ScrapeException {
+    String url = viewUrl(phId);
+
+    // the raw html contains everything we need, only start a browser if it could not be extracted from there
+    if (useFastPath() && !rawPageKnown) {
+      byte[] html = fetchHtml(url, language, null);
+      VideoPage videoPage = html == null ? null : parseHtml(phId, html);
+      if (videoPage != null && videoPage.isComplete(tier)) {
+        return videoPage;
+      }
+      metrics.increment("fallback.browser");
+      logger.debug("could not extract {} from the raw page, falling back to the browser", phId);
+    }
+    return fetchVideoPageBrowser(phId, url, language, tier);
+  }
+
+  /**
+   * @return a cached page of the video in another language which has everything the tier needs, or null
+   */
+  private VideoPage sharedPage(String phId, String language, ScrapeTier tier) {
+    VideoPage other = videoPageCache.getOtherLanguage(phId, language);
+    return other != null && other.covers(tier) && other.isComplete(tier) ? other : null;
+  }
+
+  /**
+   * Builds the page in the given language from the page in another one. Only the translated fields are read from the site, and the raw
+   * page always has them, so this never needs a browser.
+   *
+   * @return the page, null if the translated fields could not be fetched
+   */
+  private VideoPage fetchTranslation(VideoPage shared, String phId, String language, ScrapeTier tier) throws ScrapeException {
+    byte[] html = fetchHtml(viewUrl(phId), language, translationEnd(tier));
+    return html == null ? null : translate(shared, phId, html, tier);
+  }
+
+  /**
+   * @return the translated fields of the raw page combined with the language independent ones of the shared page, null if the raw page
+   *     has no title
+   */
+  private VideoPage translate(VideoPage shared, String phId, byte[] html, ScrapeTier tier) {
+    long start = System.nanoTime();
+    VideoPage translated = videoPageParser.parse(phId, html);
+    metrics.record("html.parse", start);
+    if (!translated.hasTranslatedTitle()) {
+      metrics.increment("failure.translation");
+      logger.debug("no title found on the page of {}, fetching all of it", phId);
+      return null;
+    }
+    VideoPage videoPage = shared.withTranslation(translated);
+    // a page cut off before the about tab has no category labels, deeper tiers must fetch them
+    if (tier == ScrapeTier.IDENTIFY) {
+      videoPage.setTier(ScrapeTier.IDENTIFY);
+    }
+    metrics.increment("translation.shared");
+    return videoPage;
+  }
+
+  /**
+   * @return where the download of a page can stop when only its translated fields are needed, the title is then read from the ld+json
+   *     block
+   */
+  static byte[] translationEnd(ScrapeTier tier) {
+    // the category labels are the only translated field in the about tab, and only tiers from core on show them
+    return tier == ScrapeTier.IDENTIFY ? ABOUT_TAB : TAGS_WRAPPER;
+  }
+
+  /**
+   * Parses the whole raw page whatever the tier, it costs microseconds and lets deeper scrapes reuse the result.
+   */
+  private VideoPage parseHtml(String phId, byte[] html) {
+    long start = System.nanoTime();
+    VideoPage videoPage = videoPageParser.parse(phId, html);
+    videoPage.setTier(videoPage.isComplete(ScrapeTier.FULL) ? ScrapeTier.FULL : ScrapeTier.IDENTIFY);
+    metrics.record("html.parse", start);
+    return videoPage;
+  }
+
+  /**
+   * @param stopMarker
+   *     the download stops after it, null for the whole page
+   * @return the raw page, null if it could not be fetched
+   */
+  private byte[] fetchHtml(String url, String language, byte[] stopMarker) throws ScrapeException {
+    try {
+      PornhubHttpClient.Result result = httpClient.get(url, language, Collections.emptyMap(), stopMarker);
+      if (!result.isOk()) {
+        logger.debug("Response {}, url: {}", result.getStatus(), result.getUrl());
+        return null;
+      }
+      return result.getBodyBytes();
+    }
+    catch (IOException e) {
+      logger.debug("could not fetch {}: {}", url, e.getMessage());
+      return null;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ScrapeException(e);
+    }
+  }
+
+  private byte[] fetchHtmlUnchecked(String url, String language, byte[] stopMarker) {
+    try {
+      return fetchHtml(url, language, stopMarker);
+    }
+    catch (ScrapeException e) {
+      throw new CompletionException(e);
+    }
+  }
+
+  private VideoPage fetchVideoPageBrowserUnchecked(String phId, String url, String language, ScrapeTier tier) {
+    try {
+      return fetchVideoPageBrowser(phId, url, language, tier);
+    }
+    catch (ScrapeException e) {
+      throw new CompletionException(e);
+    }
+  }
+
+  private VideoPage fetchVideoPageBrowser(String phId, String url, String language, ScrapeTier tier) throws ScrapeException {
+    try (BrowserPool.Lease lease = acquireBrowser(language)) {
+      ensureLoggedIn(lease);
+      for (int attempt = 0; ; attempt++) {
+        try (Page page = lease.newPage()) {
+          // 设置页面请求拦截器: failing sub-resources (ad pixels, trackers) are not needed, they only tell the governor to slow down
+          page.onResponse(response -> {
+            if (response.status() >= 400 && !"document".equals(response.request().resourceType())) {
+              logger.debug("Response {}:{}, url: {}", response.status(), response.statusText(), response.url());
+              metrics.increment("subresource." + response.status());
+              requestGovernor.onResponse(response.url(), response.status(), response.headers().get("retry-after"));
+            }
+          });
+          if (!navigate(lease, page, url, WaitUntilState.COMMIT)) {
+            return null;
+          }
+          long start = System.nanoTime();
+          try {
+            page.waitForFunction(tier == ScrapeTier.IDENTIFY ? IDENTIFY_PAGE_READY : VIEW_PAGE_READY);
+            metrics.record("page.ready", start);
+          }
+          catch (TimeoutError e) {
+            metrics.increment("failure.readyTimeout");
+            logger.debug("{} did not become ready, extracting what is there: {}", phId, e.getMessage());
+          }
+          if (attempt == 0 && renewExpiredSession(lease, page)) {
+            continue;
+          }
+
+          start = System.nanoTime();
+          try {
+            VideoPage videoPage = pageExtractor.extractVideoPage(page, phId);
+            // the rendered page is as complete as it gets for this tier, do not fetch it again for the same tier
+            videoPage.setTier(videoPage.isComplete(ScrapeTier.FULL) ? ScrapeTier.FULL : tier);
+            metrics.record("page.extract", start);
+            return videoPage;
+          }
+          catch (JsonProcessingException e) {
+            metrics.increment("failure.extract");
+            logger.error("parse error", e);
+            return null;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Makes sure the context of the lease carries the current login session if an account is configured. Only one thread at a time logs
+   * in, the others wait for it and continue with its session.
+   */
+  private void ensureLoggedIn(BrowserPool.Lease lease) throws ScrapeException {
+    if (!loginSession.isEnabled()) {
+      return;
+    }
+    if (!loginSession.isLoggedIn()) {
+      synchronized (loginLock) {
+        if (!loginSession.isLoggedIn() && loginSession.canLogin()) {
+          login(lease);
+          return;
+        }
+      }
+    }
+    // no-op unless another thread has logged in since the context was created
+    lease.reloadSession();
+  }
+
+  /**
+   * @return true if the page was opened logged out although there is a session, and the session has been renewed since
+   */
+  private boolean renewExpiredSession(BrowserPool.Lease lease, Page page) throws ScrapeException {
+    if (!loginSession.isEnabled() || !Boolean.TRUE.equals(page.evaluate(LOGGED_OUT))) {
+      return false;
+    }
+    int generation = lease.getSessionGeneration();
+    loginSession.expire(generation);
+    ensureLoggedIn(lease);
+    if (lease.getSessionGeneration() == generation) {
+      return false;
+    }
+    metrics.increment("login.renewed");
+    return true;
+  }
+
+  private void login(BrowserPool.Lease lease) throws ScrapeException {
+    String account = providerInfo.getConfig().getValue(CONFIG_ACCOUNT);
+    long start = System.nanoTime();
+    try (Page page = lease.newPage()) {
+      // the login dialog needs the styles and scripts the context blocks, page routes take precedence over it
+      page.route("**/*", Route::resume);
+      if (navigate(lease, page, API_URL, WaitUntilState.DOMCONTENTLOADED)) {
+        page.locator("#headerLoginLink").click();
+        page.locator("#topRightProfileMenu > div > a.logIn").click();
+        page.locator("#usernameModal").fill(account);
+        page.locator("#passwordModal").fill(providerInfo.getConfig().getValue(CONFIG_PASSWORD));
+        page.locator(".rememberMeText").click();
+        page.locator("#signinSubmit").click();
+        page.waitForFunction(LOGGED_IN);
+        lease.saveSession();
+        httpCookieGeneration = lease.getSessionGeneration();
+        httpClient.setSessionCookies(loginSession.cookies());
+        metrics.record("login", start);
+        logger.info("logged in as {}", account);
+        return;
+      }
+    }
+    catch (PlaywrightException e) {
+      logger.debug("login failed: {}", e.getMessage());
+    }
+    // scrape without the account for a while instead of trying again on every page
+    loginSession.loginFailed();
+    metrics.increment("failure.login");
+    logger.warn("could not log in as {}, scraping without the account", account);
+  }
+
+  /**
+   * Opens the main document through the request governor and retries it with a jittered backoff. The outcome of every attempt is fed
+   * back to the proxy exit of the lease.
+   *
+   * @return false if the page answered with an error which is not worth another attempt
+   */
+  private boolean navigate(BrowserPool.Lease lease, Page page, String url, WaitUntilState waitUntil) throws ScrapeException {
+    ProxyPool.Exit proxy = lease.getProxy();
+    try {
+      for (int attempt = 0; ; attempt++) {
+        int status;
+        long start = System.nanoTime();
+        try (RequestGovernor.Permit permit = requestGovernor.acquire(url)) {
+          metrics.record("http.wait", start);
+          start = System.nanoTime();
+          try {
+            Response response = page.navigate(url, new Page.NavigateOptions().setWaitUntil(waitUntil));
+            status = response == null ? 200 : response.status();
+            metrics.record("page.navigate", start);
+            permit.complete(status, response == null ? null : RequestGovernor.parseRetryAfter(response.headers().get("retry-after")));
+            if (proxy != null) {
+              proxy.record(status, start);
+            }
+          }
+          catch (PlaywrightException e) {
+            permit.complete(RequestGovernor.NO_STATUS, null);
+            if (proxy != null) {
+              proxy.record(RequestGovernor.NO_STATUS, start);
+            }
+            // the browser has crashed, the pool replaces it on the next lease
+            if (attempt >= maxRetries || page.isClosed()) {
+              metrics.increment("failure.navigate." + e.getClass().getSimpleName());
+              throw new ScrapeException(e);
+            }
+            status = RequestGovernor.NO_STATUS;
+          }
+        }
+
+        if (status >= 200 && status < 400) {
+          return true;
+        }
+        if (attempt >= maxRetries || !RequestGovernor.isRetryable(status)) {
+          metrics.increment("failure.navigate." + status);
+          logger.warn("Response {}, url: {}", status, url);
+          return false;
+        }
+        metrics.increment("retry.navigate." + status);
+        long delay = requestGovernor.backoffMillis(attempt);
+        logger.debug("attempt {} for {} failed ({}), retrying in {}ms", attempt + 1, url, status, delay);
+        Thread.sleep(delay);
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ScrapeException(e);
+    }
   }
 
-  private void parseLdJson(MediaMetadata md, Page page, MovieSearchAndScrapeOptions options) throws JsonProcessingException {
-    LdJson ldJson = objectMapper.readValue(page.innerHTML("script[type=\"application/ld+json\"]"), LdJson.class);
+  private MediaSearchResult toSearchResult(SearchResultItem item, MovieSearchAndScrapeOptions options) {
+    MediaSearchResult sr = new MediaSearchResult(getId(), MediaType.MOVIE);
+    sr.setId(getId(), item.getViewKey());
+    sr.setId(getId() + "_id", item.getVideoId());
+    sr.setTitle(item.getTitle());
+    sr.setOriginalTitle(item.getTitle());
+
+    LocalDateTime addedDate = MetadataUtils.parseAddedDate(item.getAdded(), LocalDateTime.now());
+    if (addedDate != null) {
+      sr.setYear(addedDate.getYear());
+    }
 
+    // calculate score self
+    sr.calculateScore(options);
+
+    sr.setPosterUrl(item.getThumbUrl());
+    sr.setOverview("null for now");
+    return sr;
+  }
+
+  private MediaMetadata toMediaMetadata(VideoPage videoPage, MovieSearchAndScrapeOptions options, ScrapeTier tier) {
+    MediaMetadata md = new MediaMetadata(getId());
+    md.setScrapeOptions(options);
+    md.setId(getId(), videoPage.getViewKey());
+    md.setId(getId() + "_id", videoPage.getVideoId());
+
+    long start = System.nanoTime();
+    parseLdJson(md, videoPage.getLdJson(), options, tier);
+    metrics.record("map.ldJson", start);
+
+    if (tier.covers(ScrapeTier.FULL)) {
+      start = System.nanoTime();
+      parseFlashvars(md, videoPage.getThumbUrlPattern(), options);
+      metrics.record("map.flashvars", start);
+    }
+
+    start = System.nanoTime();
+    parseVideoShow(md, videoPage, options);
+    metrics.record("map.videoShow", start);
+
+    if (tier.covers(ScrapeTier.CORE)) {
+      start = System.nanoTime();
+      parsePageElements(md, videoPage, tier.covers(ScrapeTier.FULL));
+      metrics.record("map.pageElements", start);
+    }
+
+    return md;
+  }
+
+  private void parseVideoShow(MediaMetadata md, VideoPage videoPage, MovieSearchAndScrapeOptions options) {
+    md.setTitle(videoPage.getTitleTranslated());
+    md.setOriginalTitle(videoPage.getTitleOriginal());
+    md.setOriginalLanguage(options.getLanguage().getLanguage());
+  }
+
+  private void parseLdJson(MediaMetadata md, LdJson ldJson, MovieSearchAndScrapeOptions options, ScrapeTier tier) {
     if (ldJson == null) {
       return;
     }
-    md.setPlot(StringEscapeUtils.unescapeXml(ldJson.getDescription()).replace("&period;", ".").replace("&comma;", ","));
+    if (tier.covers(ScrapeTier.CORE)) {
+      md.setPlot(MetadataUtils.unescapePlot(ldJson.getDescription()));
+    }
 
     DateTime uploadDate = DateTime.parse(ldJson.getUploadDate());
     md.setYear(uploadDate.getYear());
@@ -297,35 +1336,26 @@ public class PornhubMovieMetadataProvider implements IMovieMetadataProvider {
     poster.setSizeOrder(8);
     md.addMediaArt(poster);
     md.addMediaArt(new MediaArtwork(poster, MediaArtwork.MediaArtworkType.THUMB));
+    if (!tier.covers(ScrapeTier.FULL)) {
+      return;
+    }
 
     // extra thumbs
-    //    Pattern pattern = Pattern.compile("^(.*)(\\d+)\\.jpg$");
-    Pattern pattern = Pattern.compile("(?<=\\D)(\\d+)(?=\\.jpg)");
-    // https://ei.phncdn.com/videos/202211/06/418983331/original/(m=qZ6-V2XbeWdTGgaaaa)(mh=ax-Hrw-9ZtGX9IIr)0.jpg 将末尾的0.jpg替换为i.jpg
-    Matcher matcher = pattern.matcher(imgUrl);
-    if (matcher.find()) {
-      for (int i = 0; i <= 16; i++) {
-        String newUrl = matcher.replaceAll(String.valueOf(i));
-        MediaArtwork fanArt = new MediaArtwork(getId(), MediaArtwork.MediaArtworkType.BACKGROUND);
-        fanArt.setLanguage(options.getLanguage().getLanguage());
-        fanArt.setDefaultUrl(newUrl);
-        fanArt.setPreviewUrl(newUrl);
-        fanArt.setOriginalUrl(newUrl);
-        fanArt.setSizeOrder(8);
-        md.addMediaArt(fanArt);
-      }
+    for (String newUrl : MetadataUtils.fanartUrls(imgUrl)) {
+      MediaArtwork fanArt = new MediaArtwork(getId(), MediaArtwork.MediaArtworkType.BACKGROUND);
+      fanArt.setLanguage(options.getLanguage().getLanguage());
+      fanArt.setDefaultUrl(newUrl);
+      fanArt.setPreviewUrl(newUrl);
+      fanArt.setOriginalUrl(newUrl);
+      fanArt.setSizeOrder(8);
+      md.addMediaArt(fanArt);
     }
   }
 
-  private void parseFlashvars(MediaMetadata md, Page page, MovieSearchAndScrapeOptions options) {
-    String videoId = md.getIdAsString(getId() + "_id");
-    String urlPattern = (String) page.evaluate("flashvars_" + videoId + ".thumbs.urlPattern");
-
-    Matcher matcher = THUMB_URL_INDEX_PATTERN.matcher(urlPattern);
-    if (matcher.find()) {
-      int thumbsCount = Integer.parseInt(matcher.group(1)) + 1;
-      List<MediaArtwork> thumbs = IntStream.range(0, thumbsCount).mapToObj(idx -> {
-        String url = matcher.replaceAll(String.valueOf(idx));
+  private void parseFlashvars(MediaMetadata md, String urlPattern, MovieSearchAndScrapeOptions options) {
+    List<String> urls = MetadataUtils.thumbUrls(urlPattern);
+    if (!urls.isEmpty()) {
+      List<MediaArtwork> thumbs = urls.stream().map(url -> {
         MediaArtwork artwork = new MediaArtwork(getId(), MediaArtwork.MediaArtworkType.BACKGROUND);
         artwork.setLanguage(options.getLanguage().getLanguage());
         artwork.setDefaultUrl(url);
@@ -338,63 +1368,80 @@ public class PornhubMovieMetadataProvider implements IMovieMetadataProvider {
     }
   }
 
-  private void parsePageElements(MediaMetadata md, Page page) {
-    Locator videoLocator = page.locator("#hd-leftColVideoPage");
+  /**
+   * The local url saves downloads, the avatars of an uploader or pornstar repeat on all of their videos. But tinyMediaManager keeps it in
+   * its database and the NFO files, where it only works while this addon runs on the same port and still has the image in its store.
+   *
+   * @return the url tinyMediaManager loads a person image from
+   */
+  private String personThumb(String url) {
+    return url == null || !isEnabled(CONFIG_LOCAL_IMAGES) ? url : ImageServer.localize(url);
+  }
 
+  private void parsePageElements(MediaMetadata md, VideoPage videoPage, boolean withImages) {
     // add certification
     md.addCertification(MediaCertification.US_NC17);
 
     // parse rating info
-    int currentUp = Integer.parseInt(videoLocator.locator("[data-rating]").and(videoLocator.locator(".votesUp")).getAttribute("data-rating"));
-    int currentDown = Integer.parseInt(videoLocator.locator("[data-rating]").and(videoLocator.locator(".votesDown")).getAttribute("data-rating"));
-    int totalVotes = currentUp + currentDown;
-    float rating = 10.0f * currentUp / totalVotes;
-    md.addRating(new MediaRating(MediaRating.USER, rating, totalVotes, 10));
+    if (videoPage.getVotesUp() != null && videoPage.getVotesDown() != null) {
+      int currentUp = videoPage.getVotesUp();
+      int totalVotes = currentUp + videoPage.getVotesDown();
+      if (totalVotes > 0) {
+        float rating = 10.0f * currentUp / totalVotes;
+        md.addRating(new MediaRating(MediaRating.USER, rating, totalVotes, 10));
+      }
+    }
 
     // parse trailer url
-    ElementHandle addToTabImg = page.querySelector("div.add-to-tab img");
-    if (addToTabImg != null) {
-      String trailerUrl = addToTabImg.getAttribute("data-mediabook");
+    if (StringUtils.isNotEmpty(videoPage.getTrailerUrl())) {
       MediaTrailer trailer = new MediaTrailer();
       trailer.setProvider(getId());
       trailer.setName("mediabook");
-      trailer.setUrl(trailerUrl);
+      trailer.setUrl(videoPage.getTrailerUrl());
       md.addTrailer(trailer);
     }
 
     // parse detail info
-    Locator aboutTab = videoLocator.locator("div.about-tab");
     // author
-    Locator userRow = aboutTab.locator("div.userRow");
-    Person author = new Person(Person.Type.DIRECTOR, userRow.locator("span.usernameBadgesWrapper").textContent().trim(), null,
-        userRow.getByRole(AriaRole.IMG).getAttribute("src"),
-        API_URL + userRow.locator("span.usernameBadgesWrapper").getByRole(AriaRole.LINK).getAttribute("href"));
-    md.addCastMember(author);
-
-    Person writer = new Person(author);
-    writer.setType(Person.Type.WRITER);
-    md.addCastMember(writer);
-
-    Person producer = new Person(author);
-    producer.setType(Person.Type.PRODUCER);
-    md.addCastMember(producer);
+    Person author = null;
+    VideoPage.Performer uploader = videoPage.getUploader();
+    if (uploader != null) {
+      author = new Person(Person.Type.DIRECTOR, uploader.getName(), null, withImages ? personThumb(uploader.getThumbUrl()) : null,
+          API_URL + uploader.getProfilePath());
+      md.addCastMember(author);
+
+      Person writer = new Person(author);
+      writer.setType(Person.Type.WRITER);
+      md.addCastMember(writer);
+
+      Person producer = new Person(author);
+      producer.setType(Person.Type.PRODUCER);
+      md.addCastMember(producer);
+    }
     // actors
-    aboutTab.locator("[data-label='Pornstar']").all().forEach(actor -> {
-      Locator img = actor.getByRole(AriaRole.IMG);
-      md.addCastMember(new Person(Person.Type.ACTOR, actor.textContent().trim(), actor.textContent().trim(), img.getAttribute("src"),
-          API_URL + actor.getAttribute("href")));
-    });
+    for (VideoPage.Performer actor : videoPage.getPornstars()) {
+      md.addCastMember(new Person(Person.Type.ACTOR, actor.getName(), actor.getName(),
+          withImages ? personThumb(actor.getThumbUrl()) : null, API_URL + actor.getProfilePath()));
+    }
     // if contains no actors, add the director as actor
-    if (md.getCastMembers(Person.Type.ACTOR).isEmpty()) {
+    if (author != null && md.getCastMembers(Person.Type.ACTOR).isEmpty()) {
       Person person = new Person(author);
       person.setType(Person.Type.ACTOR);
       md.addCastMember(person);
     }
 
-    aboutTab.locator("[data-label='Category']").all().stream().map(category -> MediaGenres.getGenre(category.textContent())).forEach(md::addGenre);
+    videoPage.getCategories().stream().map(MediaGenres::getGenre).forEach(md::addGenre);
     md.addGenre(MediaGenres.EROTIC);
-    aboutTab.locator("[data-label='Tag']").all().forEach(tag -> md.addTag(tag.textContent()));
+    videoPage.getTags().forEach(md::addTag);
   }
 
-}
+  private static final class SearchWalk {
+    private final List<SearchResultItem> items;
+    private final boolean                stoppedEarly;
 
+    private SearchWalk(List<SearchResultItem> items, boolean stoppedEarly) {
+      this.items = items;
+      this.stoppedEarly = stoppedEarly;
+    }
+  }
+}
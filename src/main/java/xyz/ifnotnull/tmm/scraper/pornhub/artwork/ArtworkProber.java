@@ -0,0 +1,202 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.artwork;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xyz.ifnotnull.tmm.scraper.pornhub.http.PornhubHttpClient;
+import xyz.ifnotnull.tmm.scraper.pornhub.http.RequestGovernor;
+import xyz.ifnotnull.tmm.scraper.pornhub.metrics.ScraperMetrics;
+import xyz.ifnotnull.tmm.scraper.pornhub.parser.ImageHeader;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Checks artwork urls before tinyMediaManager downloads them. Every url costs one ranged GET for the first bytes of the image: enough to
+ * tell dead urls, to read the real dimensions from the image header and to recognize the same image behind different urls. The urls of
+ * one call are probed concurrently.
+ */
+public class ArtworkProber {
+  /** the video frames fit completely, larger JPEGs may carry a preview and color profiles before their frame header */
+  public static final int PROBE_BYTES = 64 * 1024;
+
+  private static final Logger logger = LoggerFactory.getLogger(ArtworkProber.class);
+
+  private final PornhubHttpClient httpClient;
+  private final Executor          executor;
+  private final ScraperMetrics    metrics;
+
+  public ArtworkProber(PornhubHttpClient httpClient, Executor executor, ScraperMetrics metrics) {
+    this.httpClient = httpClient;
+    this.executor = executor;
+    this.metrics = metrics;
+  }
+
+  /**
+   * @param urls
+   *     the urls to probe, blank ones and duplicates are skipped
+   * @return the probe of every distinct url, in the order of the urls
+   * @throws InterruptedException
+   *     the calling thread was interrupted while waiting for the probes
+   */
+  public Map<String, Probe> probe(Collection<String> urls) throws InterruptedException {
+    Map<String, CompletableFuture<Probe>> futures = new LinkedHashMap<>();
+    for (String url : urls) {
+      if (StringUtils.isNotBlank(url)) {
+        futures.computeIfAbsent(url, u -> CompletableFuture.supplyAsync(() -> probe(u), executor));
+      }
+    }
+    try {
+      CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).get();
+    }
+    catch (ExecutionException e) {
+      // probe(String) reports failures in its result, the executor may still have rejected a task
+      logger.debug("could not probe all artwork: {}", e.getMessage());
+    }
+
+    Map<String, Probe> probes = new LinkedHashMap<>();
+    futures.forEach((url, future) -> probes.put(url, future.isCompletedExceptionally() ? unanswered(url) : future.join()));
+    return probes;
+  }
+
+  private Probe probe(String url) {
+    long start = System.nanoTime();
+    try {
+      PornhubHttpClient.Result result = httpClient.getRange(url, PROBE_BYTES);
+      if (!result.isOk()) {
+        metrics.increment("artwork.probe." + result.getStatus());
+        return new Probe(url, result.getStatus(), false, 0, 0, null);
+      }
+      byte[] head = result.getBodyBytes();
+      ImageHeader header = ImageHeader.read(head);
+      // the cdn answers some missing images with an error page instead of an error status
+      String contentType = result.getHeader("Content-Type");
+      boolean image = header != null || StringUtils.isBlank(contentType) || StringUtils.startsWithIgnoreCase(contentType, "image/");
+      if (!image) {
+        metrics.increment("artwork.probe.noImage");
+        return new Probe(url, result.getStatus(), false, 0, 0, null);
+      }
+      return new Probe(url, result.getStatus(), true, header == null ? 0 : header.getWidth(), header == null ? 0 : header.getHeight(),
+          fingerprint(head, totalLength(result, head.length)));
+    }
+    catch (IOException e) {
+      logger.debug("could not probe {}: {}", url, e.getMessage());
+      return unanswered(url);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return unanswered(url);
+    }
+    finally {
+      metrics.record("artwork.probe", start);
+    }
+  }
+
+  /**
+   * @return the length of the whole image, from the {@code Content-Range} of a partial response
+   */
+  private static long totalLength(PornhubHttpClient.Result result, int read) {
+    String range = result.getHeader("Content-Range");
+    if (range != null && range.lastIndexOf('/') >= 0) {
+      try {
+        return Long.parseLong(range.substring(range.lastIndexOf('/') + 1).trim());
+      }
+      catch (NumberFormatException e) {
+        // "*" for an unknown length
+      }
+    }
+    String length = result.getHeader("Content-Length");
+    if (result.getStatus() == 200 && StringUtils.isNumeric(length)) {
+      return Long.parseLong(length);
+    }
+    return read;
+  }
+
+  private static String fingerprint(byte[] head, long totalLength) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update(head);
+      return new BigInteger(1, digest.digest()).toString(16) + "/" + totalLength;
+    }
+    catch (NoSuchAlgorithmException e) {
+      // every Java platform has SHA-1
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static Probe unanswered(String url) {
+    return new Probe(url, RequestGovernor.NO_STATUS, false, 0, 0, null);
+  }
+
+  /**
+   * What the site answered for an artwork url.
+   */
+  public static final class Probe {
+    private final String  url;
+    private final int     status;
+    private final boolean image;
+    private final int     width;
+    private final int     height;
+    private final String  fingerprint;
+
+    public Probe(String url, int status, boolean image, int width, int height, String fingerprint) {
+      this.url = url;
+      this.status = status;
+      this.image = image;
+      this.width = width;
+      this.height = height;
+      this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @return true if the site gave a final answer; timeouts, throttling and server errors are worth another probe later
+     */
+    public boolean isAnswered() {
+      return status >= 200 && status < 500 && !RequestGovernor.isRetryable(status);
+    }
+
+    /**
+     * @return true if the url does not lead to an image
+     */
+    public boolean isDead() {
+      return isAnswered() && !image;
+    }
+
+    public String getUrl() {
+      return url;
+    }
+
+    public int getStatus() {
+      return status;
+    }
+
+    /**
+     * @return the width in pixels, 0 if the image header could not be read
+     */
+    public int getWidth() {
+      return width;
+    }
+
+    /**
+     * @return the height in pixels, 0 if the image header could not be read
+     */
+    public int getHeight() {
+      return height;
+    }
+
+    /**
+     * @return the same for every url serving the same image, null for dead urls
+     */
+    public String getFingerprint() {
+      return fingerprint;
+    }
+  }
+}
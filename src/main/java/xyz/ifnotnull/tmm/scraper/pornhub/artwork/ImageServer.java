@@ -0,0 +1,272 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.artwork;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tinymediamanager.Globals;
+import xyz.ifnotnull.tmm.scraper.pornhub.PornhubMovieMetadataProvider;
+import xyz.ifnotnull.tmm.scraper.pornhub.http.PornhubHttpClient;
+import xyz.ifnotnull.tmm.scraper.pornhub.http.ProxyPool;
+import xyz.ifnotnull.tmm.scraper.pornhub.http.RequestGovernor;
+import xyz.ifnotnull.tmm.scraper.pornhub.metrics.ScraperMetrics;
+import xyz.ifnotnull.tmm.scraper.pornhub.util.DaemonThreadFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the {@link ImageStore} to tinyMediaManager over HTTP on the loopback interface. A local url carries the url of the image on the
+ * site: the first request fetches the image into the store, later requests for it, also under other urls, are answered from disk. Only
+ * images of the site and its cdn are served, the server is no general proxy. The posters and banners of the {@link PosterPipeline} are
+ * served from the store under their own path.
+ * <p>
+ * The metadata and the artwork provider share one server per JVM, see {@link #localize(String)}.
+ */
+public class ImageServer implements AutoCloseable {
+  /** local urls stay valid across restarts as long as this port is free */
+  public static final int PREFERRED_PORT = 47380;
+
+  private static final Logger   logger           = LoggerFactory.getLogger(ImageServer.class);
+  private static final String   PATH             = "/pornhub/image";
+  private static final String   GENERATED_PATH   = "/pornhub/generated";
+  private static final String   CDN_DOMAIN       = "phncdn.com";
+  private static final Duration REVALIDATE_AFTER = Duration.ofDays(7);
+  private static final long     DEFAULT_MAX_SIZE = 1024L * 1024L * 1024L;
+  private static final int      SERVER_THREADS   = 4;
+  // every poster worker decodes one frame at a time, keep the memory low
+  private static final int      POSTER_THREADS   = 2;
+  private static final int      DOWNLOAD_RATE    = 20;
+  private static final int      DOWNLOAD_RETRIES = 2;
+
+  private static ImageServer shared;
+  private static boolean     unavailable;
+
+  private final ImageStore      store;
+  private final HttpServer      server;
+  private final ExecutorService executor;
+  private final ExecutorService posterExecutor;
+  private final PosterPipeline  posterPipeline;
+  private final ScraperMetrics  metrics;
+  private final String          baseUrl;
+  private final String          generatedUrl;
+  private final String          siteHost;
+
+  private ImageServer(ImageStore store, ScraperMetrics metrics) throws IOException {
+    this.store = store;
+    this.metrics = metrics;
+    this.siteHost = URI.create(PornhubMovieMetadataProvider.API_URL).getHost();
+    HttpServer httpServer;
+    try {
+      httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), PREFERRED_PORT), 0);
+    }
+    catch (BindException e) {
+      logger.debug("port {} is taken, serving images on another one", PREFERRED_PORT);
+      httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    }
+    this.server = httpServer;
+    this.executor = Executors.newFixedThreadPool(SERVER_THREADS, new DaemonThreadFactory("pornhub-images"));
+    server.setExecutor(executor);
+    server.createContext(PATH, this::handle);
+    server.createContext(GENERATED_PATH, this::handleGenerated);
+    server.start();
+    String host = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getAddress().getPort();
+    this.baseUrl = host + PATH + "?url=";
+    this.generatedUrl = host + GENERATED_PATH + "?key=";
+    this.posterExecutor = Executors.newFixedThreadPool(POSTER_THREADS, new DaemonThreadFactory("pornhub-posters"));
+    this.posterPipeline = new PosterPipeline(store, posterExecutor, metrics);
+    logger.info("serving images on {}", baseUrl);
+  }
+
+  /**
+   * @return the server of this JVM, started on first use; null if it could not be started
+   */
+  public static synchronized ImageServer shared() {
+    if (shared == null && !unavailable) {
+      ScraperMetrics metrics = new ScraperMetrics();
+      metrics.register("ImageServerMetrics");
+      PornhubHttpClient httpClient = new PornhubHttpClient(PornhubMovieMetadataProvider.API_URL, Duration.ofSeconds(30),
+          new RequestGovernor(DOWNLOAD_RATE, SERVER_THREADS, SERVER_THREADS * 4), DOWNLOAD_RETRIES, metrics,
+          ProxyPool.ofGlobalSettings(metrics));
+      ImageStore store = new ImageStore(Paths.get(Globals.CACHE_FOLDER, PornhubMovieMetadataProvider.ID, "images"), REVALIDATE_AFTER,
+          DEFAULT_MAX_SIZE, httpClient, metrics);
+      try {
+        shared = new ImageServer(store, metrics);
+        Runtime.getRuntime().addShutdownHook(new Thread(shared::close));
+      }
+      catch (IOException | LinkageError e) {
+        // LinkageError: a runtime without the jdk.httpserver module
+        unavailable = true;
+        store.close();
+        metrics.close();
+        logger.warn("could not start the local image server, images are loaded from the site: {}", e.getMessage());
+      }
+    }
+    return shared;
+  }
+
+  /**
+   * @param url
+   *     the url of an image on the site
+   * @return the url of the image on the local server, the given url if there is no server or it does not serve the url
+   */
+  public static String localize(String url) {
+    ImageServer server = shared();
+    return server == null ? url : server.localUrl(url);
+  }
+
+  /**
+   * @return the local url of the image, the given url if the server does not serve it
+   */
+  public String localUrl(String url) {
+    return isServed(url) ? baseUrl + URLEncoder.encode(url, StandardCharsets.UTF_8) : url;
+  }
+
+  /**
+   * @return the pipeline which makes posters and banners from the frames of a video, its results are served by this server
+   */
+  public PosterPipeline getPosterPipeline() {
+    return posterPipeline;
+  }
+
+  /**
+   * @param image
+   *     an image made by the {@link PosterPipeline}
+   * @return the local url of the image, which changes with its content
+   */
+  public String generatedUrl(PosterPipeline.GeneratedImage image) {
+    // the hash keeps tinyMediaManager from taking an old poster from its own cache after it was generated again
+    return generatedUrl + URLEncoder.encode(image.getKey(), StandardCharsets.UTF_8) + "&v=" + image.getHash().substring(0, 12);
+  }
+
+  /**
+   * @param maxSize
+   *     the new maximum size of the stored images in bytes
+   */
+  public void setMaxSize(long maxSize) {
+    store.setMaxSize(maxSize);
+  }
+
+  private boolean isServed(String url) {
+    if (StringUtils.isBlank(url)) {
+      return false;
+    }
+    try {
+      URI uri = URI.create(url);
+      String host = uri.getHost();
+      return ("https".equals(uri.getScheme()) || "http".equals(uri.getScheme())) && host != null && (host.equals(siteHost)
+          || host.equals(CDN_DOMAIN) || host.endsWith("." + CDN_DOMAIN) || host.endsWith("." + PornhubMovieMetadataProvider.API_HOST));
+    }
+    catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      boolean head = "HEAD".equals(exchange.getRequestMethod());
+      if (!head && !"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      String url = queryParameter(exchange.getRequestURI().getRawQuery(), "url");
+      if (!isServed(url)) {
+        exchange.sendResponseHeaders(404, -1);
+        return;
+      }
+
+      ImageStore.StoredImage image;
+      try {
+        image = store.get(url);
+      }
+      catch (IOException e) {
+        logger.debug("could not load {}: {}", url, e.getMessage());
+        exchange.sendResponseHeaders(502, -1);
+        return;
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        exchange.sendResponseHeaders(503, -1);
+        return;
+      }
+      respond(exchange, image, head);
+    }
+    finally {
+      exchange.close();
+    }
+  }
+
+  private void handleGenerated(HttpExchange exchange) throws IOException {
+    try {
+      boolean head = "HEAD".equals(exchange.getRequestMethod());
+      if (!head && !"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      String key = queryParameter(exchange.getRequestURI().getRawQuery(), "key");
+      // only the generated images, not every url the store knows
+      respond(exchange, key != null && key.startsWith("generated/") ? store.find(key) : null, head);
+    }
+    finally {
+      exchange.close();
+    }
+  }
+
+  private void respond(HttpExchange exchange, ImageStore.StoredImage image, boolean head) throws IOException {
+    if (image == null) {
+      exchange.sendResponseHeaders(404, -1);
+      return;
+    }
+
+    // the content of an etag never changes, an url may point to another image after a revalidation
+    String etag = "\"" + image.getHash() + "\"";
+    exchange.getResponseHeaders().set("Content-Type", image.getContentType());
+    exchange.getResponseHeaders().set("ETag", etag);
+    exchange.getResponseHeaders().set("Cache-Control", "max-age=" + REVALIDATE_AFTER.getSeconds());
+    if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+      exchange.sendResponseHeaders(304, -1);
+      return;
+    }
+    exchange.sendResponseHeaders(200, head ? -1 : image.getSize());
+    if (!head) {
+      try (OutputStream out = exchange.getResponseBody()) {
+        Files.copy(image.getFile(), out);
+      }
+    }
+  }
+
+  private static String queryParameter(String rawQuery, String name) {
+    if (rawQuery == null) {
+      return null;
+    }
+    for (String parameter : rawQuery.split("&")) {
+      int equals = parameter.indexOf('=');
+      if (equals > 0 && name.equals(parameter.substring(0, equals))) {
+        return URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+    posterExecutor.shutdownNow();
+    store.close();
+    metrics.close();
+  }
+}
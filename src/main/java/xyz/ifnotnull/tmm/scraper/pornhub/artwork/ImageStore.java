@@ -0,0 +1,417 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.artwork;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xyz.ifnotnull.tmm.scraper.pornhub.cache.ScraperStore;
+import xyz.ifnotnull.tmm.scraper.pornhub.http.PornhubHttpClient;
+import xyz.ifnotnull.tmm.scraper.pornhub.http.RequestGovernor;
+import xyz.ifnotnull.tmm.scraper.pornhub.metrics.ScraperMetrics;
+import xyz.ifnotnull.tmm.scraper.pornhub.parser.ImageHeader;
+import xyz.ifnotnull.tmm.scraper.pornhub.util.SingleFlight;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * A content addressed store of downloaded images. Every image is kept once, as a file named by the SHA-256 of its content, however many
+ * urls serve it. An index maps the urls to their file together with the validators of the last response, so that a url is revalidated
+ * with a conditional request instead of being downloaded again. Once the files exceed the maximum size the least recently served ones
+ * are deleted.
+ * <p>
+ * Images the scraper made itself, like generated posters, are pinned: their urls have been handed out and cannot be downloaded again,
+ * so they are neither evicted nor counted against the maximum size. A pinned image is replaced when its key is stored again.
+ */
+public class ImageStore implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(ImageStore.class);
+
+  private final    ObjectMapper                      mapper    = JsonMapper.builder()
+      .serializationInclusion(JsonInclude.Include.NON_NULL)
+      .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+      .build();
+  private final    AtomicBoolean                     evicting  = new AtomicBoolean();
+  private final    AtomicLong                        totalSize = new AtomicLong();
+  private final    Path                              directory;
+  private final    ScraperStore                      store;
+  private final    ConcurrentMap<String, byte[]>     urls;
+  private final    ConcurrentMap<String, Long>       sizes;
+  private final    ConcurrentMap<String, Long>       lastAccess;
+  private final    ConcurrentMap<String, Long>       pinned;
+  private final    PornhubHttpClient                 httpClient;
+  private final    ScraperMetrics                    metrics;
+  private final    long                              revalidateAfterMillis;
+  private final    SingleFlight<String, StoredImage> downloads;
+  private volatile long                              maxSize;
+
+  /**
+   * @param directory
+   *     the directory of the image files, the index is kept next to them
+   * @param revalidateAfter
+   *     how long an url is served without asking the site whether its image has changed
+   * @param maxSize
+   *     the maximum size of all image files in bytes
+   */
+  public ImageStore(Path directory, Duration revalidateAfter, long maxSize, PornhubHttpClient httpClient, ScraperMetrics metrics) {
+    this.directory = directory;
+    this.store = ScraperStore.open(directory.resolve("index.mv"));
+    this.urls = store.openMap("urls");
+    this.sizes = store.openMap("sizes");
+    this.lastAccess = store.openMap("sizes.lastAccess");
+    this.pinned = store.openMap("sizes.pinned");
+    this.httpClient = httpClient;
+    this.metrics = metrics;
+    this.revalidateAfterMillis = revalidateAfter.toMillis();
+    this.maxSize = maxSize;
+    this.downloads = new SingleFlight<>(() -> metrics.increment("images.joined"));
+    sizes.values().forEach(totalSize::addAndGet);
+  }
+
+  /**
+   * @param maxSize
+   *     the new maximum size of all image files in bytes, applies to the next stored image
+   */
+  public void setMaxSize(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns the image of an url from the store, downloading or revalidating it first if needed.
+   *
+   * @param url
+   *     the url of the image
+   * @return the stored image, null if the site does not serve it
+   * @throws IOException
+   *     the image could not be downloaded or stored
+   * @throws InterruptedException
+   *     the calling thread was interrupted
+   */
+  public StoredImage get(String url) throws IOException, InterruptedException {
+    UrlEntry known = readEntry(url);
+    StoredImage stored = known == null ? null : stored(known.hash);
+    if (stored != null && System.currentTimeMillis() - known.checkedAt < revalidateAfterMillis) {
+      metrics.increment("images.hit");
+      return stored;
+    }
+    UrlEntry validators = stored == null ? null : known;
+    return downloads.execute(url, () -> download(url, validators));
+  }
+
+  private StoredImage download(String url, UrlEntry known) throws IOException {
+    long start = System.nanoTime();
+    Map<String, String> headers = new HashMap<>();
+    if (known != null && known.etag != null) {
+      headers.put("If-None-Match", known.etag);
+    }
+    if (known != null && known.lastModified != null) {
+      headers.put("If-Modified-Since", known.lastModified);
+    }
+    PornhubHttpClient.Result result;
+    try {
+      result = httpClient.getImage(url, headers);
+      metrics.record("images.download", start);
+    }
+    catch (InterruptedException e) {
+      // the single flight hands the exception to the callers which joined this download as well
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while downloading " + url);
+    }
+    catch (IOException e) {
+      if (known == null) {
+        throw e;
+      }
+      // serve the stored image as long as the site cannot be reached
+      logger.debug("could not revalidate {}: {}", url, e.getMessage());
+      return stored(known.hash);
+    }
+
+    if (known != null && result.isNotModified()) {
+      known.checkedAt = System.currentTimeMillis();
+      writeEntry(url, known);
+      metrics.increment("images.notModified");
+      return stored(known.hash);
+    }
+    if (!result.isOk()) {
+      logger.debug("Response {}, url: {}", result.getStatus(), url);
+      return known != null && RequestGovernor.isRetryable(result.getStatus()) ? stored(known.hash) : null;
+    }
+
+    byte[] image = result.getBodyBytes();
+    ImageHeader header = ImageHeader.read(image);
+    if (header == null) {
+      metrics.increment("images.noImage");
+      logger.debug("{} is no image", url);
+      return null;
+    }
+    String hash = storeContent(image, false);
+
+    UrlEntry entry = new UrlEntry();
+    entry.hash = hash;
+    entry.etag = result.getHeader("ETag");
+    entry.lastModified = result.getHeader("Last-Modified");
+    entry.checkedAt = System.currentTimeMillis();
+    writeEntry(url, entry);
+
+    evictIfNeeded();
+    return new StoredImage(hash, file(hash), "image/" + header.getFormat(), image.length);
+  }
+
+  /**
+   * Stores an image made by the scraper itself, e.g. a generated poster. It is pinned and never revalidated.
+   *
+   * @param key
+   *     the key of the image, must not look like an url of the site
+   * @param image
+   *     the encoded image
+   * @return the stored image
+   * @throws IOException
+   *     the data is no image or could not be stored
+   */
+  public StoredImage put(String key, byte[] image) throws IOException {
+    ImageHeader header = ImageHeader.read(image);
+    if (header == null) {
+      throw new IOException(key + " is no image");
+    }
+    String hash = storeContent(image, true);
+    UrlEntry previous = readEntry(key);
+    UrlEntry entry = new UrlEntry();
+    entry.hash = hash;
+    entry.checkedAt = System.currentTimeMillis();
+    writeEntry(key, entry);
+    if (previous != null && !hash.equals(previous.hash) && pinned.remove(previous.hash) != null && !sizes.containsKey(previous.hash)) {
+      Files.deleteIfExists(file(previous.hash));
+    }
+    return new StoredImage(hash, file(hash), "image/" + header.getFormat(), image.length);
+  }
+
+  /**
+   * @return the image stored under an url or key, without going to the site; null if it is not in the store
+   */
+  public StoredImage find(String key) {
+    UrlEntry known = readEntry(key);
+    return known == null ? null : stored(known.hash);
+  }
+
+  /**
+   * Writes the content to its file unless an image with the same content is stored already.
+   *
+   * @param pin
+   *     true to keep the image out of the eviction
+   * @return the hash of the content
+   */
+  private String storeContent(byte[] image, boolean pin) throws IOException {
+    String hash = sha256(image);
+    Path file = file(hash);
+    ConcurrentMap<String, Long> known = pin ? pinned : sizes;
+    if (known.containsKey(hash) && Files.exists(file)) {
+      metrics.increment("images.deduplicated");
+    }
+    else {
+      Files.createDirectories(file.getParent());
+      Path tmp = Files.createTempFile(file.getParent(), hash, ".tmp");
+      try {
+        Files.write(tmp, image);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+      finally {
+        Files.deleteIfExists(tmp);
+      }
+      if (known.put(hash, (long) image.length) == null && !pin) {
+        totalSize.addAndGet(image.length);
+      }
+      metrics.increment("images.stored");
+    }
+    if (!pin) {
+      lastAccess.put(hash, System.currentTimeMillis());
+    }
+    return hash;
+  }
+
+  /**
+   * @return the image if its file is still there, its access time is updated
+   */
+  private StoredImage stored(String hash) {
+    Long size = sizes.get(hash);
+    boolean isPinned = size == null;
+    if (isPinned) {
+      size = pinned.get(hash);
+    }
+    Path file = file(hash);
+    if (size == null || !Files.isRegularFile(file)) {
+      return null;
+    }
+    ImageHeader header;
+    try {
+      header = ImageHeader.read(readHead(file));
+    }
+    catch (IOException e) {
+      logger.debug("could not read {}: {}", file, e.getMessage());
+      return null;
+    }
+    if (!isPinned) {
+      lastAccess.put(hash, System.currentTimeMillis());
+    }
+    return new StoredImage(hash, file, header == null ? "application/octet-stream" : "image/" + header.getFormat(), size);
+  }
+
+  private static byte[] readHead(Path file) throws IOException {
+    try (InputStream in = Files.newInputStream(file)) {
+      return in.readNBytes(ArtworkProber.PROBE_BYTES);
+    }
+  }
+
+  private void evictIfNeeded() {
+    if (totalSize.get() <= maxSize || !evicting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      // trim to 90% so that we do not sort the whole store on every following download
+      long target = maxSize * 9 / 10;
+      List<String> oldest = lastAccess.entrySet()
+          .stream()
+          .sorted(Map.Entry.comparingByValue(Comparator.naturalOrder()))
+          .map(Map.Entry::getKey)
+          .collect(Collectors.toList());
+      Set<String> evicted = new HashSet<>();
+      for (String hash : oldest) {
+        if (totalSize.get() <= target) {
+          break;
+        }
+        Long size = sizes.remove(hash);
+        lastAccess.remove(hash);
+        if (size != null) {
+          totalSize.addAndGet(-size);
+        }
+        if (pinned.containsKey(hash)) {
+          // a pinned image with the same content, only the download is gone
+          continue;
+        }
+        try {
+          Files.deleteIfExists(file(hash));
+        }
+        catch (IOException e) {
+          logger.debug("could not delete {}: {}", hash, e.getMessage());
+        }
+        evicted.add(hash);
+      }
+      urls.entrySet().removeIf(e -> {
+        UrlEntry entry = parse(e.getValue());
+        return entry == null || evicted.contains(entry.hash);
+      });
+      logger.debug("evicted {} stored images", evicted.size());
+    }
+    finally {
+      evicting.set(false);
+    }
+  }
+
+  private Path file(String hash) {
+    return directory.resolve(hash.substring(0, 2)).resolve(hash);
+  }
+
+  private UrlEntry readEntry(String url) {
+    byte[] value = urls.get(url);
+    return value == null ? null : parse(value);
+  }
+
+  private UrlEntry parse(byte[] value) {
+    try {
+      return mapper.readValue(value, UrlEntry.class);
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  private void writeEntry(String url, UrlEntry entry) {
+    try {
+      urls.put(url, mapper.writeValueAsBytes(entry));
+    }
+    catch (IOException e) {
+      logger.debug("could not index {}: {}", url, e.getMessage());
+    }
+  }
+
+  private static String sha256(byte[] data) {
+    try {
+      return String.format("%064x", new BigInteger(1, MessageDigest.getInstance("SHA-256").digest(data)));
+    }
+    catch (NoSuchAlgorithmException e) {
+      // every Java platform has SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    store.close();
+  }
+
+  /**
+   * The file of an url and the validators of its last response.
+   */
+  @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+  private static final class UrlEntry {
+    private String hash;
+    private String etag;
+    private String lastModified;
+    private long   checkedAt;
+  }
+
+  /**
+   * An image in the store.
+   */
+  public static final class StoredImage {
+    private final String hash;
+    private final Path   file;
+    private final String contentType;
+    private final long   size;
+
+    private StoredImage(String hash, Path file, String contentType, long size) {
+      this.hash = hash;
+      this.file = file;
+      this.contentType = contentType;
+      this.size = size;
+    }
+
+    /**
+     * @return the SHA-256 of the image, the same for all urls serving it
+     */
+    public String getHash() {
+      return hash;
+    }
+
+    public Path getFile() {
+      return file;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    public long getSize() {
+      return size;
+    }
+  }
+}
@@ -0,0 +1,458 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.artwork;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xyz.ifnotnull.tmm.scraper.pornhub.metrics.ScraperMetrics;
+import xyz.ifnotnull.tmm.scraper.pornhub.parser.ImageHeader;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes posters and banners from the landscape frames of a video. The site only has 16:9 frames, tinyMediaManager wants a 2:3 poster
+ * and a wide banner.
+ * <p>
+ * The frames are only decoded subsampled to a small analysis size, where a cheap saliency map is computed: the local contrast of every
+ * pixel plus a bonus for skin tones, as the people are what a poster should show. The frame whose best poster window is the most
+ * salient wins, frames too small for a poster are scored down. Only the chosen regions are decoded at full size, so a worker never holds
+ * more than one analysis image and one crop, and the number of workers bounds the memory of the whole pipeline.
+ * <p>
+ * The results are pinned in the {@link ImageStore} under {@code generated/<viewkey>/poster} and {@code generated/<viewkey>/banner}, so
+ * that the urls handed out for them keep working. A video without a usable frame is not analyzed again for an hour.
+ */
+public class PosterPipeline {
+  private static final Logger logger             = LoggerFactory.getLogger(PosterPipeline.class);
+  private static final int    ANALYSIS_WIDTH     = 320;
+  private static final int    MIN_SOURCE_HEIGHT  = 480;
+  private static final int    MAX_POSTER_HEIGHT  = 1500;
+  private static final int    MAX_FRAMES         = 16;
+  private static final int    SKIN_BONUS         = 48;
+  /** the size of a tinyMediaManager banner */
+  private static final double BANNER_ASPECT      = 1000 / 185.0;
+  private static final double POSTER_ASPECT      = 2 / 3.0;
+  private static final long   RETRY_FAILED_NANOS = TimeUnit.HOURS.toNanos(1);
+  private static final int    MAX_FAILED         = 1000;
+
+  private final ImageStore                                      store;
+  private final ExecutorService                                 executor;
+  private final ScraperMetrics                                  metrics;
+  private final Map<String, CompletableFuture<GeneratedImages>> running = new ConcurrentHashMap<>();
+  // viewkey -> nano time of the failed generation
+  private final Map<String, Long>                               failed  = Collections.synchronizedMap(
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+          return size() > MAX_FAILED;
+        }
+      });
+
+  /**
+   * @param executor
+   *     the workers which download, decode and encode the images; their number bounds the memory of the pipeline
+   */
+  public PosterPipeline(ImageStore store, ExecutorService executor, ScraperMetrics metrics) {
+    this.store = store;
+    this.executor = executor;
+    this.metrics = metrics;
+  }
+
+  /**
+   * @return the key a generated image of a video is stored under
+   */
+  public static String key(String viewKey, String kind) {
+    return "generated/" + viewKey + "/" + kind;
+  }
+
+  /**
+   * Generates the poster and banner of a video on the workers, or returns them from the store if they have been generated before.
+   *
+   * @param viewKey
+   *     the viewkey of the video
+   * @param frameUrls
+   *     the urls of the frames to choose from, in the order of preference for equally good frames
+   * @return the generated images, empty ones if none of the frames could be used
+   */
+  public CompletableFuture<GeneratedImages> generate(String viewKey, List<String> frameUrls) {
+    GeneratedImages known = find(viewKey);
+    if (known != null) {
+      metrics.increment("posters.hit");
+      return CompletableFuture.completedFuture(known);
+    }
+    Long failedAt = failed.get(viewKey);
+    if (failedAt != null && System.nanoTime() - failedAt < RETRY_FAILED_NANOS) {
+      metrics.increment("posters.failed.hit");
+      return CompletableFuture.completedFuture(new GeneratedImages(null, null));
+    }
+    // the artwork of a video is asked for again while it is generated, e.g. by the artwork and the metadata scrape
+    CompletableFuture<GeneratedImages> future = running.computeIfAbsent(viewKey,
+        k -> CompletableFuture.supplyAsync(() -> generateNow(viewKey, frameUrls), executor));
+    future.whenComplete((images, e) -> {
+      running.remove(viewKey, future);
+      if (images == null || images.getPoster() == null) {
+        failed.put(viewKey, System.nanoTime());
+      }
+    });
+    return future;
+  }
+
+  private GeneratedImages find(String viewKey) {
+    ImageStore.StoredImage poster = store.find(key(viewKey, "poster"));
+    if (poster == null) {
+      return null;
+    }
+    return new GeneratedImages(generated(viewKey, "poster", poster), generated(viewKey, "banner", store.find(key(viewKey, "banner"))));
+  }
+
+  private GeneratedImages generateNow(String viewKey, List<String> frameUrls) {
+    long start = System.nanoTime();
+    try {
+      Frame best = null;
+      for (String url : frameUrls.subList(0, Math.min(MAX_FRAMES, frameUrls.size()))) {
+        Frame frame = analyze(url);
+        if (frame != null && (best == null || frame.score > best.score)) {
+          best = frame;
+        }
+      }
+      if (best == null) {
+        metrics.increment("posters.noFrame");
+        logger.debug("no usable frame for the poster of {}", viewKey);
+        return new GeneratedImages(null, null);
+      }
+      GeneratedImage poster = render(viewKey, "poster", best, best.poster);
+      GeneratedImage banner = best.banner == null ? null : render(viewKey, "banner", best, best.banner);
+      metrics.increment("posters.generated");
+      return new GeneratedImages(poster, banner);
+    }
+    catch (IOException e) {
+      logger.debug("could not generate the poster of {}: {}", viewKey, e.getMessage());
+      return new GeneratedImages(null, null);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return new GeneratedImages(null, null);
+    }
+    finally {
+      metrics.record("posters.generate", start);
+    }
+  }
+
+  /**
+   * Decodes the frame subsampled and finds its most salient poster and banner windows.
+   *
+   * @return the frame or null if it cannot be loaded or decoded
+   */
+  private Frame analyze(String url) throws InterruptedException {
+    ImageStore.StoredImage stored;
+    try {
+      stored = store.get(url);
+    }
+    catch (IOException e) {
+      logger.debug("could not load the frame {}: {}", url, e.getMessage());
+      return null;
+    }
+    if (stored == null) {
+      return null;
+    }
+    BufferedImage image;
+    int width;
+    int height;
+    int subsampling;
+    try (ImageInputStream in = ImageIO.createImageInputStream(stored.getFile().toFile())) {
+      ImageReader reader = reader(in);
+      if (reader == null) {
+        // e.g. WebP, which the JDK cannot decode
+        return null;
+      }
+      try {
+        width = reader.getWidth(0);
+        height = reader.getHeight(0);
+        subsampling = Math.max(1, width / ANALYSIS_WIDTH);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        image = reader.read(0, param);
+      }
+      finally {
+        reader.dispose();
+      }
+    }
+    catch (IOException | RuntimeException e) {
+      logger.debug("could not decode the frame {}: {}", url, e.getMessage());
+      return null;
+    }
+
+    int w = image.getWidth();
+    int h = image.getHeight();
+    int[] saliency = saliency(image);
+    long[] columns = new long[w];
+    long[] rows = new long[h];
+    for (int y = 0; y < h; y++) {
+      for (int x = 0; x < w; x++) {
+        columns[x] += saliency[y * w + x];
+        rows[y] += saliency[y * w + x];
+      }
+    }
+
+    Frame frame = new Frame(stored.getFile());
+    Rectangle poster;
+    long posterSaliency;
+    int posterWidth = (int) Math.round(h * POSTER_ASPECT);
+    if (posterWidth <= w) {
+      int x = bestWindow(columns, posterWidth);
+      poster = new Rectangle(x, 0, posterWidth, h);
+      posterSaliency = sum(columns, x, posterWidth);
+    }
+    else {
+      int posterHeight = (int) Math.round(w / POSTER_ASPECT);
+      int y = bestWindow(rows, Math.min(h, posterHeight));
+      poster = new Rectangle(0, y, w, Math.min(h, posterHeight));
+      posterSaliency = sum(rows, y, poster.height);
+    }
+    frame.poster = toSource(poster, subsampling, width, height);
+    int bannerHeight = (int) Math.round(w / BANNER_ASPECT);
+    if (bannerHeight > 0 && bannerHeight <= h) {
+      int y = bestWindow(rows, bannerHeight);
+      frame.banner = toSource(new Rectangle(0, y, w, bannerHeight), subsampling, width, height);
+    }
+    // small frames make blurry posters
+    double resolution = Math.min(1.0, height / (double) MIN_SOURCE_HEIGHT);
+    frame.score = posterSaliency / (double) Math.max(1, poster.width * poster.height) * resolution;
+    return frame;
+  }
+
+  private static ImageReader reader(ImageInputStream in) {
+    if (in == null) {
+      return null;
+    }
+    Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+    if (!readers.hasNext()) {
+      return null;
+    }
+    ImageReader reader = readers.next();
+    reader.setInput(in, true, true);
+    return reader;
+  }
+
+  /**
+   * @return per pixel the sum of the horizontal and vertical luma differences, plus a bonus for skin tones
+   */
+  static int[] saliency(BufferedImage image) {
+    int w = image.getWidth();
+    int h = image.getHeight();
+    int[] rgb = image.getRGB(0, 0, w, h, null, 0, w);
+    int[] luma = new int[rgb.length];
+    boolean[] skin = new boolean[rgb.length];
+    for (int i = 0; i < rgb.length; i++) {
+      int r = (rgb[i] >> 16) & 0xFF;
+      int g = (rgb[i] >> 8) & 0xFF;
+      int b = rgb[i] & 0xFF;
+      luma[i] = (299 * r + 587 * g + 114 * b) / 1000;
+      // the skin range of the YCbCr space after Chai and Ngan
+      int cb = 128 + (-168736 * r - 331264 * g + 500000 * b) / 1000000;
+      int cr = 128 + (500000 * r - 418688 * g - 81312 * b) / 1000000;
+      skin[i] = cb >= 77 && cb <= 127 && cr >= 133 && cr <= 173;
+    }
+    int[] saliency = new int[rgb.length];
+    for (int y = 0; y < h; y++) {
+      for (int x = 0; x < w; x++) {
+        int i = y * w + x;
+        int dx = Math.abs(luma[y * w + Math.min(w - 1, x + 1)] - luma[y * w + Math.max(0, x - 1)]);
+        int dy = Math.abs(luma[Math.min(h - 1, y + 1) * w + x] - luma[Math.max(0, y - 1) * w + x]);
+        saliency[i] = dx + dy + (skin[i] ? SKIN_BONUS : 0);
+      }
+    }
+    return saliency;
+  }
+
+  /**
+   * @return the start of the window of the given length with the highest sum, the centered one if all are equal
+   */
+  static int bestWindow(long[] sums, int length) {
+    int positions = sums.length - length + 1;
+    if (positions <= 1) {
+      return 0;
+    }
+    int center = (positions - 1) / 2;
+    long window = sum(sums, 0, length);
+    long best = window;
+    int bestStart = 0;
+    for (int start = 1; start < positions; start++) {
+      window += sums[start + length - 1] - sums[start - 1];
+      if (window > best || (window == best && Math.abs(start - center) < Math.abs(bestStart - center))) {
+        best = window;
+        bestStart = start;
+      }
+    }
+    return bestStart;
+  }
+
+  private static long sum(long[] sums, int start, int length) {
+    long sum = 0;
+    for (int i = start; i < start + length; i++) {
+      sum += sums[i];
+    }
+    return sum;
+  }
+
+  /**
+   * @return the rectangle of the analysis image in the coordinates of the full frame, within its bounds
+   */
+  private static Rectangle toSource(Rectangle analysis, int subsampling, int width, int height) {
+    Rectangle source = new Rectangle(analysis.x * subsampling, analysis.y * subsampling, analysis.width * subsampling,
+        analysis.height * subsampling);
+    return source.intersection(new Rectangle(0, 0, width, height));
+  }
+
+  /**
+   * Decodes only the region of the frame, encodes it as JPEG and stores it.
+   */
+  private GeneratedImage render(String viewKey, String kind, Frame frame, Rectangle region) throws IOException {
+    BufferedImage crop;
+    try (ImageInputStream in = ImageIO.createImageInputStream(frame.file.toFile())) {
+      ImageReader reader = reader(in);
+      if (reader == null) {
+        throw new IOException("no decoder for " + frame.file);
+      }
+      try {
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(region);
+        int subsampling = (region.height + MAX_POSTER_HEIGHT - 1) / MAX_POSTER_HEIGHT;
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        crop = reader.read(0, param);
+      }
+      finally {
+        reader.dispose();
+      }
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    if (!ImageIO.write(toRgb(crop), "jpg", out)) {
+      throw new IOException("no JPEG encoder");
+    }
+    ImageStore.StoredImage stored = store.put(key(viewKey, kind), out.toByteArray());
+    return new GeneratedImage(key(viewKey, kind), crop.getWidth(), crop.getHeight(), stored.getHash());
+  }
+
+  /**
+   * @return the image without alpha channel, which the JPEG encoder of the JDK cannot write
+   */
+  private static BufferedImage toRgb(BufferedImage image) {
+    if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+      return image;
+    }
+    BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = rgb.createGraphics();
+    try {
+      graphics.drawImage(image, 0, 0, null);
+    }
+    finally {
+      graphics.dispose();
+    }
+    return rgb;
+  }
+
+  private static GeneratedImage generated(String viewKey, String kind, ImageStore.StoredImage stored) {
+    if (stored == null) {
+      return null;
+    }
+    ImageHeader header;
+    try (InputStream in = Files.newInputStream(stored.getFile())) {
+      header = ImageHeader.read(in.readNBytes(ArtworkProber.PROBE_BYTES));
+    }
+    catch (IOException e) {
+      return null;
+    }
+    return header == null ? null : new GeneratedImage(key(viewKey, kind), header.getWidth(), header.getHeight(), stored.getHash());
+  }
+
+  /**
+   * A frame with its best windows in full size coordinates.
+   */
+  private static final class Frame {
+    private final Path      file;
+    private       Rectangle poster;
+    private       Rectangle banner;
+    private       double    score;
+
+    private Frame(Path file) {
+      this.file = file;
+    }
+  }
+
+  /**
+   * The poster and banner of a video, each null if it could not be made.
+   */
+  public static final class GeneratedImages {
+    private final GeneratedImage poster;
+    private final GeneratedImage banner;
+
+    private GeneratedImages(GeneratedImage poster, GeneratedImage banner) {
+      this.poster = poster;
+      this.banner = banner;
+    }
+
+    public GeneratedImage getPoster() {
+      return poster;
+    }
+
+    public GeneratedImage getBanner() {
+      return banner;
+    }
+  }
+
+  /**
+   * An image in the store made by the pipeline.
+   */
+  public static final class GeneratedImage {
+    private final String key;
+    private final int    width;
+    private final int    height;
+    private final String hash;
+
+    private GeneratedImage(String key, int width, int height, String hash) {
+      this.key = key;
+      this.width = width;
+      this.height = height;
+      this.hash = hash;
+    }
+
+    /**
+     * @return the key of the image in the store
+     */
+    public String getKey() {
+      return key;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    /**
+     * @return the SHA-256 of the image, changes when it is generated again
+     */
+    public String getHash() {
+      return hash;
+    }
+  }
+}
@@ -0,0 +1,589 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.browser;
+
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.BrowserType;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.Playwright;
+import com.microsoft.playwright.PlaywrightException;
+import com.microsoft.playwright.options.Proxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xyz.ifnotnull.tmm.scraper.pornhub.http.ProxyPool;
+import xyz.ifnotnull.tmm.scraper.pornhub.metrics.ScraperMetrics;
+import xyz.ifnotnull.tmm.scraper.pornhub.util.DaemonThreadFactory;
+import xyz.ifnotnull.tmm.scraper.pornhub.util.ProcessMemory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A bounded pool of browser slots. Playwright objects are not thread safe, so every slot owns its own {@link Playwright} driver and
+ * Chromium process and is handed to exactly one thread at a time. Scrapes running on different slots are fully parallel.
+ * <p>
+ * Slots are started on demand by the first lease which needs them and shut down again after they were idle for the idle timeout.
+ * <p>
+ * A supervisor thread checks the slots every few seconds: browsers whose process has died are dropped, and browsers which have opened
+ * more pages than the page limit or grown beyond the memory limit are retired. Retired slots finish their current lease and are shut
+ * down instead of being returned, the next lease launches a fresh browser, so that long batches keep a steady memory footprint.
+ * <p>
+ * Contexts start with the storage state of the {@link LoginSession}. A context created before the session changed is replaced on its
+ * next lease, so a login done by one slot carries over to all others.
+ * <p>
+ * Every context is bound to the proxy exit of the lease which created it. Idle slots whose context already uses the requested exit and
+ * locale are leased first, so that concurrent scrapes keep their contexts while they are spread over the exits.
+ */
+public class BrowserPool implements AutoCloseable {
+  private static final Logger logger                    = LoggerFactory.getLogger(BrowserPool.class);
+  private static final long   SUPERVISOR_PERIOD_SECONDS = 10;
+
+  private final    int                      maxSize;
+  private final    long                     acquireTimeoutMillis;
+  private final    long                     idleTimeoutNanos;
+  private final    Semaphore                permits;
+  private final    ResourceBlocker          resourceBlocker;
+  private final    LoginSession             loginSession;
+  private final    ScraperMetrics           metrics;
+  private final    Deque<Slot>              idle       = new ArrayDeque<>();
+  private final    Set<Slot>                all        = new HashSet<>();
+  private final    ScheduledExecutorService supervisor;
+  private final    Object                   launchLock = new Object();
+  private volatile int                      maxPagesPerBrowser;
+  private volatile long                     maxBrowserRss;
+  private          boolean                  closed;
+
+  /**
+   * @param maxSize
+   *     the maximum number of browser slots that can be leased at the same time
+   * @param acquireTimeout
+   *     how long {@link #acquire(String, ProxyPool.Selection)} waits for a free slot
+   * @param idleTimeout
+   *     how long an unused browser is kept running, 0 keeps it until the pool is closed
+   * @param unit
+   *     the unit of acquireTimeout and idleTimeout
+   * @param resourceBlocker
+   *     the requests to abort in every browser context
+   * @param loginSession
+   *     the storage state every browser context starts with
+   * @param metrics
+   *     records the wait, launch and context times
+   */
+  public BrowserPool(int maxSize, long acquireTimeout, long idleTimeout, TimeUnit unit, ResourceBlocker resourceBlocker,
+      LoginSession loginSession, ScraperMetrics metrics) {
+    this.maxSize = Math.max(1, maxSize);
+    this.resourceBlocker = resourceBlocker;
+    this.loginSession = loginSession;
+    this.metrics = metrics;
+    this.acquireTimeoutMillis = unit.toMillis(acquireTimeout);
+    this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+    this.permits = new Semaphore(this.maxSize, true);
+
+    supervisor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("pornhub-browser-supervisor"));
+    long period = TimeUnit.SECONDS.toNanos(SUPERVISOR_PERIOD_SECONDS);
+    if (idleTimeoutNanos > 0) {
+      period = Math.max(TimeUnit.SECONDS.toNanos(1), Math.min(period, idleTimeoutNanos / 4));
+    }
+    supervisor.scheduleWithFixedDelay(this::supervise, period, period, TimeUnit.NANOSECONDS);
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Sets when a browser is retired and replaced by a fresh one, takes effect for running browsers as well.
+   *
+   * @param maxPages
+   *     the number of pages a browser may open, 0 for no limit
+   * @param maxRssBytes
+   *     the resident memory of a browser's driver and Chromium processes, 0 for no limit
+   */
+  public void setRecycleLimits(int maxPages, long maxRssBytes) {
+    this.maxPagesPerBrowser = Math.max(0, maxPages);
+    this.maxBrowserRss = Math.max(0, maxRssBytes);
+  }
+
+  /**
+   * Leases a browser slot whose context is configured for the given locale and proxy.
+   *
+   * @param locale
+   *     the locale of the browser context
+   * @param proxy
+   *     the selected proxy exit of the browser context, null for a direct connection; it is released together with the lease, or right
+   *     away if no lease could be acquired
+   * @return the lease, must be closed after use
+   * @throws TimeoutException
+   *     no slot became available within the acquire timeout
+   * @throws InterruptedException
+   *     the calling thread was interrupted while waiting
+   */
+  public Lease acquire(String locale, ProxyPool.Selection proxy) throws TimeoutException, InterruptedException {
+    boolean leased = false;
+    try {
+      Lease lease = lease(locale, proxy);
+      leased = true;
+      return lease;
+    }
+    finally {
+      if (!leased && proxy != null) {
+        proxy.release();
+      }
+    }
+  }
+
+  private Lease lease(String locale, ProxyPool.Selection selection) throws TimeoutException, InterruptedException {
+    ProxyPool.Exit proxy = selection == null ? null : selection.getExit();
+    long start = System.nanoTime();
+    if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+      metrics.increment("failure.browserTimeout");
+      throw new TimeoutException("no browser available after " + acquireTimeoutMillis + "ms");
+    }
+
+    Slot slot;
+    List<Slot> dead = new ArrayList<>();
+    synchronized (this) {
+      if (closed) {
+        permits.release();
+        throw new IllegalStateException("browser pool is closed");
+      }
+      slot = pollIdle(locale, proxy, dead);
+      if (slot != null && !slot.fits(proxy)) {
+        all.remove(slot);
+      }
+    }
+    closeDead(dead);
+    if (slot != null && !slot.fits(proxy)) {
+      // the proxies were switched on or off since the browser was launched
+      metrics.increment("browser.recycled.proxy");
+      slot.close();
+      slot = null;
+    }
+    metrics.record("browser.wait", start);
+
+    try {
+      if (slot != null) {
+        try {
+          prepareContext(slot, locale, proxy);
+          return new Lease(slot, selection);
+        }
+        catch (PlaywrightException e) {
+          // the browser died while it was idle and nobody noticed yet, continue with a fresh one
+          Slot crashed = slot;
+          slot = null;
+          synchronized (this) {
+            all.remove(crashed);
+          }
+          closeDead(Collections.singletonList(crashed));
+        }
+      }
+      start = System.nanoTime();
+      slot = launch(proxy != null);
+      metrics.record("browser.launch", start);
+      prepareContext(slot, locale, proxy);
+      return new Lease(slot, selection);
+    }
+    catch (RuntimeException e) {
+      release(slot, false);
+      throw e;
+    }
+  }
+
+  /**
+   * Takes the idle slot to lease out of the pool, must hold the lock. The most recently used slot whose context already fits is
+   * preferred, then the most recently used one launched for the same kind of connection, then any. Dead slots are moved to the given
+   * list on the way.
+   *
+   * @return the slot or null if none is idle
+   */
+  private Slot pollIdle(String locale, ProxyPool.Exit proxy, List<Slot> dead) {
+    Slot sameLaunch = null;
+    Slot other = null;
+    Iterator<Slot> it = idle.iterator();
+    while (it.hasNext()) {
+      Slot slot = it.next();
+      // a crash between two supervisor runs
+      if (!slot.isAlive()) {
+        it.remove();
+        all.remove(slot);
+        dead.add(slot);
+      }
+      else if (slot.fits(proxy) && Objects.equals(proxy, slot.contextProxy) && Objects.equals(locale, slot.contextLocale)) {
+        it.remove();
+        return slot;
+      }
+      else if (slot.fits(proxy) && sameLaunch == null) {
+        sameLaunch = slot;
+      }
+      else if (other == null) {
+        other = slot;
+      }
+    }
+    Slot slot = sameLaunch != null ? sameLaunch : other;
+    if (slot != null) {
+      idle.remove(slot);
+    }
+    return slot;
+  }
+
+  private void prepareContext(Slot slot, String locale, ProxyPool.Exit proxy) {
+    long start = System.nanoTime();
+    if (slot.prepareContext(locale, proxy, resourceBlocker, loginSession)) {
+      metrics.record("browser.context", start);
+    }
+  }
+
+  private Slot launch(boolean proxied) {
+    // the driver process of the slot is told apart from the other children of the JVM by launching one slot at a time
+    synchronized (launchLock) {
+      Set<ProcessHandle> before = ProcessHandle.current().children().collect(Collectors.toSet());
+      Slot slot = new Slot(proxied);
+      List<ProcessHandle> started = ProcessHandle.current().children().filter(p -> !before.contains(p)).collect(Collectors.toList());
+      slot.driver = started.size() == 1 ? started.get(0) : null;
+      synchronized (this) {
+        all.add(slot);
+      }
+      return slot;
+    }
+  }
+
+  private void release(Slot slot, boolean reusable) {
+    if (slot != null) {
+      if (reusable && slot.retired == null && maxPagesPerBrowser > 0 && slot.pages >= maxPagesPerBrowser) {
+        slot.retired = "pages";
+      }
+      if (reusable && slot.retired != null) {
+        metrics.increment("browser.recycled." + slot.retired);
+        logger.debug("recycling a browser after {} pages ({})", slot.pages, slot.retired);
+        reusable = false;
+      }
+      synchronized (this) {
+        if (!reusable || closed) {
+          all.remove(slot);
+        }
+        if (reusable && !closed) {
+          // LIFO: keep the most recently used (warm) slots busy, so the others can run into the idle timeout
+          slot.releasedAt = System.nanoTime();
+          idle.addFirst(slot);
+          slot = null;
+        }
+      }
+      if (slot != null) {
+        slot.close();
+      }
+    }
+    permits.release();
+  }
+
+  /**
+   * Health check of all slots, runs on the supervisor thread. Only process state is read here, the Playwright objects of a slot are
+   * touched by the thread which holds its lease or, for idle slots, after they have been taken out of the pool.
+   */
+  private void supervise() {
+    try {
+      List<Slot> expired = new ArrayList<>();
+      List<Slot> dead = new ArrayList<>();
+      List<Slot> running;
+      long now = System.nanoTime();
+      synchronized (this) {
+        Iterator<Slot> it = idle.iterator();
+        while (it.hasNext()) {
+          Slot slot = it.next();
+          if (!slot.isAlive()) {
+            it.remove();
+            all.remove(slot);
+            dead.add(slot);
+          }
+          else if (idleTimeoutNanos > 0 && now - slot.releasedAt >= idleTimeoutNanos) {
+            it.remove();
+            all.remove(slot);
+            expired.add(slot);
+          }
+        }
+        running = new ArrayList<>(all);
+      }
+      closeDead(dead);
+      if (!expired.isEmpty()) {
+        logger.debug("shutting down {} idle browser(s)", expired.size());
+        expired.forEach(Slot::close);
+      }
+
+      long maxRss = maxBrowserRss;
+      if (maxRss > 0) {
+        for (Slot slot : running) {
+          long rss = slot.rss();
+          if (rss > maxRss && slot.retired == null) {
+            logger.debug("browser uses {} MB, retiring it", rss / (1024 * 1024));
+            slot.retired = "memory";
+            retireIfIdle(slot);
+          }
+        }
+      }
+    }
+    catch (RuntimeException e) {
+      // never let an exception cancel the schedule
+      logger.warn("browser supervisor failed: {}", e.getMessage());
+    }
+  }
+
+  private void retireIfIdle(Slot slot) {
+    synchronized (this) {
+      if (!idle.remove(slot)) {
+        // leased, closed when the lease is released
+        return;
+      }
+      all.remove(slot);
+    }
+    metrics.increment("browser.recycled." + slot.retired);
+    slot.close();
+  }
+
+  private void closeDead(List<Slot> dead) {
+    for (Slot slot : dead) {
+      metrics.increment("browser.crashed");
+      logger.warn("a browser process has died, it will be replaced");
+      slot.close();
+    }
+  }
+
+  @Override
+  public void close() {
+    supervisor.shutdownNow();
+    Deque<Slot> toClose;
+    synchronized (this) {
+      closed = true;
+      toClose = new ArrayDeque<>(idle);
+      idle.clear();
+      all.removeAll(toClose);
+    }
+    toClose.forEach(Slot::close);
+  }
+
+  /**
+   * A leased browser slot. Pages opened through the lease are closed when the lease is closed, the browser context is kept for the
+   * next lease with the same locale and proxy.
+   */
+  public final class Lease implements AutoCloseable {
+    private final Slot                slot;
+    private final ProxyPool.Selection selection;
+    private final ProxyPool.Exit      proxy;
+    private       boolean             broken;
+    private       boolean             released;
+
+    private Lease(Slot slot, ProxyPool.Selection selection) {
+      this.slot = slot;
+      this.selection = selection;
+      this.proxy = selection == null ? null : selection.getExit();
+    }
+
+    /**
+     * @return the proxy exit the context of this lease goes through, null for a direct connection
+     */
+    public ProxyPool.Exit getProxy() {
+      return proxy;
+    }
+
+    public Page newPage() {
+      long start = System.nanoTime();
+      try {
+        Page page = slot.context.newPage();
+        slot.pages++;
+        metrics.record("page.new", start);
+        return page;
+      }
+      catch (PlaywrightException e) {
+        broken = true;
+        throw e;
+      }
+    }
+
+    /**
+     * @return the {@link LoginSession} generation the context of this lease was created with or last logged in with
+     */
+    public int getSessionGeneration() {
+      return slot.contextGeneration;
+    }
+
+    /**
+     * Saves the storage state of the context after it has logged in, contexts of the other slots pick it up on their next lease.
+     */
+    public void saveSession() {
+      try {
+        slot.contextGeneration = loginSession.update(slot.context.storageState());
+      }
+      catch (PlaywrightException e) {
+        broken = true;
+        throw e;
+      }
+    }
+
+    /**
+     * Replaces the context if the {@link LoginSession} has changed since it was created. Pages of the old context are closed.
+     *
+     * @return true if the context was replaced
+     */
+    public boolean reloadSession() {
+      try {
+        return slot.prepareContext(slot.contextLocale, slot.contextProxy, resourceBlocker, loginSession);
+      }
+      catch (PlaywrightException e) {
+        broken = true;
+        throw e;
+      }
+    }
+
+    /**
+     * Marks the underlying browser as unusable, it will be shut down instead of being returned to the pool.
+     */
+    public void invalidate() {
+      broken = true;
+    }
+
+    @Override
+    public void close() {
+      if (released) {
+        return;
+      }
+      released = true;
+      if (selection != null) {
+        selection.release();
+      }
+      if (!broken && !slot.isAlive()) {
+        broken = true;
+      }
+      if (!broken) {
+        try {
+          slot.context.pages().forEach(Page::close);
+        }
+        catch (PlaywrightException e) {
+          broken = true;
+        }
+      }
+      release(slot, !broken);
+    }
+  }
+
+  private static final class Slot {
+    private final    Playwright     playwright;
+    private final    Browser        browser;
+    private final    boolean        proxied;
+    private          ProcessHandle  driver;
+    private volatile boolean        disconnected;
+    // why the slot is shut down on its next release, set by the supervisor thread
+    private volatile String         retired;
+    private          int            pages;
+    private          BrowserContext context;
+    private          String         contextLocale;
+    private          ProxyPool.Exit contextProxy;
+    private          int            contextGeneration;
+    private          long           releasedAt;
+
+    /**
+     * @param proxied
+     *     true if the contexts of the browser go through proxies; Chromium on Windows only honors the proxy of a context if the browser
+     *     was launched with a proxy as well, it is never used as long as every context sets its own
+     */
+    private Slot(boolean proxied) {
+      this.proxied = proxied;
+      Playwright pw = Playwright.create();
+      try {
+        BrowserType.LaunchOptions options = new BrowserType.LaunchOptions().setHeadless(true);
+        if (proxied) {
+          options.setProxy(new Proxy("http://per-context"));
+        }
+        browser = pw.chromium().launch(options);
+      }
+      catch (RuntimeException e) {
+        pw.close();
+        throw e;
+      }
+      playwright = pw;
+      browser.onDisconnected(b -> disconnected = true);
+    }
+
+    /**
+     * @return false if the browser has disconnected or its driver process has exited
+     */
+    private boolean isAlive() {
+      // Chromium is a child of the driver, which lives on when the browser crashes
+      return !disconnected && (driver == null || (driver.isAlive() && driver.children().findAny().isPresent()));
+    }
+
+    /**
+     * @return the resident memory of the driver and the browser processes in bytes or -1 if it is unknown
+     */
+    private long rss() {
+      if (driver == null) {
+        return -1;
+      }
+      long own = ProcessMemory.rss(driver.pid());
+      long children = ProcessMemory.descendantsRss(driver);
+      return own < 0 || children < 0 ? -1 : own + children;
+    }
+
+    /**
+     * @return true if the browser was launched for contexts with the given kind of connection
+     */
+    private boolean fits(ProxyPool.Exit proxy) {
+      return proxied == (proxy != null);
+    }
+
+    /**
+     * @return true if a new context had to be created
+     */
+    private boolean prepareContext(String locale, ProxyPool.Exit proxy, ResourceBlocker resourceBlocker, LoginSession loginSession) {
+      // read both under the session lock, so that the state belongs to the generation
+      String storageState;
+      int generation;
+      synchronized (loginSession) {
+        storageState = loginSession.getStorageState();
+        generation = loginSession.getGeneration();
+      }
+      if (context != null && Objects.equals(locale, contextLocale) && Objects.equals(proxy, contextProxy)
+          && generation == contextGeneration) {
+        return false;
+      }
+      if (context != null) {
+        context.close();
+        context = null;
+      }
+      Browser.NewContextOptions options = new Browser.NewContextOptions().setLocale(locale);
+      if (proxy != null) {
+        options.setProxy(new Proxy(proxy.getServer()).setUsername(proxy.getUsername()).setPassword(proxy.getPassword()));
+      }
+      if (storageState != null) {
+        options.setStorageState(storageState);
+      }
+      context = browser.newContext(options);
+      resourceBlocker.install(context);
+      contextLocale = locale;
+      contextProxy = proxy;
+      contextGeneration = generation;
+      return true;
+    }
+
+    private void close() {
+      try {
+        browser.close();
+      }
+      catch (PlaywrightException e) {
+        logger.debug("could not close browser: {}", e.getMessage());
+      }
+      finally {
+        playwright.close();
+      }
+    }
+  }
+}
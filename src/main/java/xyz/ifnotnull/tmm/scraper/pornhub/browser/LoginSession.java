@@ -0,0 +1,225 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.browser;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.HttpCookie;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The storage state (cookies and local storage) of a logged in browser context, shared by all browser contexts of a {@link BrowserPool}
+ * and kept on disk, so that the scraper logs in once and not on every page or every start of tinyMediaManager.
+ * <p>
+ * Every change of the state increments the generation. Contexts remember the generation they were created with, which tells stale
+ * contexts apart and lets concurrent scrapes which all ran into an expired session log in only once.
+ */
+public class LoginSession {
+  private static final Logger logger               = LoggerFactory.getLogger(LoginSession.class);
+  // a failed login (wrong password, captcha) is not tried again on every scrape
+  private static final long   FAILED_LOGIN_BACKOFF = TimeUnit.MINUTES.toNanos(10);
+
+  private final Path         file;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private       String       account;
+  private       String       stateAccount;
+  private       String       storageState;
+  private       int          generation;
+  private       long         failedAt;
+  private       boolean      failed;
+
+  /**
+   * @param file
+   *     the file the storage state is kept in, a state saved by a previous run is loaded from there
+   */
+  public LoginSession(Path file) {
+    this.file = file;
+    load();
+  }
+
+  private void load() {
+    if (file == null || !Files.isRegularFile(file)) {
+      return;
+    }
+    try {
+      JsonNode root = mapper.readTree(Files.readAllBytes(file));
+      JsonNode state = root.get("storageState");
+      if (root.hasNonNull("account") && state != null && state.isObject()) {
+        stateAccount = root.get("account").asText();
+        storageState = mapper.writeValueAsString(state);
+      }
+    }
+    catch (IOException e) {
+      logger.warn("could not read the saved login session {}: {}", file, e.getMessage());
+    }
+  }
+
+  private void save() {
+    if (file == null) {
+      return;
+    }
+    try {
+      if (storageState == null) {
+        Files.deleteIfExists(file);
+        return;
+      }
+      ObjectNode root = mapper.createObjectNode();
+      root.put("account", stateAccount);
+      root.set("storageState", mapper.readTree(storageState));
+      Files.createDirectories(file.getParent());
+      Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+      Files.write(tmp, mapper.writeValueAsBytes(root));
+      try {
+        // the file holds the session cookies of the account
+        Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-------"));
+      }
+      catch (UnsupportedOperationException e) {
+        // not a posix file system
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException e) {
+      logger.warn("could not save the login session to {}: {}", file, e.getMessage());
+    }
+  }
+
+  /**
+   * Sets the account to log in with. A saved state of another account is dropped.
+   *
+   * @param account
+   *     the account, blank disables the login
+   */
+  public synchronized void setAccount(String account) {
+    String value = StringUtils.trimToNull(account);
+    if (StringUtils.equals(value, this.account)) {
+      return;
+    }
+    this.account = value;
+    failed = false;
+    if (storageState != null && !StringUtils.equals(value, stateAccount)) {
+      logger.debug("dropping the login session of another account");
+      storageState = null;
+      stateAccount = null;
+      generation++;
+      save();
+    }
+  }
+
+  /**
+   * @return true if an account is set
+   */
+  public synchronized boolean isEnabled() {
+    return account != null;
+  }
+
+  /**
+   * @return true if there is a state of the current account, which has not been reported as expired yet
+   */
+  public synchronized boolean isLoggedIn() {
+    return account != null && storageState != null;
+  }
+
+  /**
+   * @return false while the last failed login is too recent to try again
+   */
+  public synchronized boolean canLogin() {
+    return account != null && (!failed || System.nanoTime() - failedAt >= FAILED_LOGIN_BACKOFF);
+  }
+
+  /**
+   * @return the storage state JSON new browser contexts start with, null if there is none
+   */
+  public synchronized String getStorageState() {
+    return account == null ? null : storageState;
+  }
+
+  public synchronized int getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Stores the state of a context which has just logged in.
+   *
+   * @param storageState
+   *     the storage state JSON of the context
+   * @return the new generation
+   */
+  public synchronized int update(String storageState) {
+    this.storageState = storageState;
+    this.stateAccount = account;
+    failed = false;
+    generation++;
+    save();
+    return generation;
+  }
+
+  /**
+   * Drops the state after the site showed a context of the given generation as logged out. Reports for an older generation are ignored,
+   * somebody else has logged in again in the meantime.
+   *
+   * @param generation
+   *     the generation of the context which was logged out
+   */
+  public synchronized void expire(int generation) {
+    if (generation != this.generation || storageState == null) {
+      return;
+    }
+    logger.debug("the login session has expired");
+    storageState = null;
+    stateAccount = null;
+    this.generation++;
+    save();
+  }
+
+  /**
+   * Records a failed login, no new attempt is made during the next minutes.
+   */
+  public synchronized void loginFailed() {
+    failed = true;
+    failedAt = System.nanoTime();
+  }
+
+  /**
+   * @return the cookies of the state, for HTTP requests outside of the browser
+   */
+  public synchronized List<HttpCookie> cookies() {
+    if (getStorageState() == null) {
+      return Collections.emptyList();
+    }
+    List<HttpCookie> cookies = new ArrayList<>();
+    try {
+      long now = System.currentTimeMillis() / 1000;
+      for (JsonNode node : mapper.readTree(storageState).path("cookies")) {
+        HttpCookie cookie = new HttpCookie(node.path("name").asText(), node.path("value").asText());
+        cookie.setDomain(node.path("domain").asText());
+        cookie.setPath(node.path("path").asText("/"));
+        cookie.setSecure(node.path("secure").asBoolean());
+        cookie.setHttpOnly(node.path("httpOnly").asBoolean());
+        cookie.setVersion(0);
+        long expires = node.path("expires").asLong(-1);
+        if (expires > 0) {
+          if (expires <= now) {
+            continue;
+          }
+          cookie.setMaxAge(expires - now);
+        }
+        cookies.add(cookie);
+      }
+    }
+    catch (IOException | IllegalArgumentException e) {
+      logger.debug("could not read the cookies of the login session: {}", e.getMessage());
+    }
+    return cookies;
+  }
+}
@@ -0,0 +1,66 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.browser;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.microsoft.playwright.Page;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.SearchResultItem;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.VideoPage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Extracts the scraper data from a rendered page with a single {@code evaluate} call. Every Locator call is a round trip to the
+ * Playwright driver, so the scripts in {@code js/} collect all fields inside the page and hand back one json payload.
+ */
+public class PageExtractor {
+  private static final String VIDEO_PAGE_SCRIPT     = loadScript("video_page.js");
+  private static final String SEARCH_RESULTS_SCRIPT = loadScript("search_results.js");
+
+  private final ObjectMapper mapper = JsonMapper.builder().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES).build();
+
+  /**
+   * @param page
+   *     a loaded {@code view_video.php} page
+   * @param viewKey
+   *     the viewkey of the page
+   * @return the page data, fields which are missing on the page are left empty
+   * @throws JsonProcessingException
+   *     the payload of the page script could not be mapped
+   */
+  public VideoPage extractVideoPage(Page page, String viewKey) throws JsonProcessingException {
+    VideoPage videoPage = mapper.readValue((String) page.evaluate(VIDEO_PAGE_SCRIPT), VideoPage.class);
+    videoPage.setViewKey(viewKey);
+    return videoPage;
+  }
+
+  /**
+   * @param page
+   *     a loaded search result page
+   * @return all entries of the result list in page order
+   * @throws JsonProcessingException
+   *     the payload of the page script could not be mapped
+   */
+  public List<SearchResultItem> extractSearchResults(Page page) throws JsonProcessingException {
+    return mapper.readValue((String) page.evaluate(SEARCH_RESULTS_SCRIPT), new TypeReference<List<SearchResultItem>>() {
+    });
+  }
+
+  private static String loadScript(String name) {
+    try (InputStream in = PageExtractor.class.getResourceAsStream("/xyz/ifnotnull/tmm/scraper/pornhub/js/" + name)) {
+      if (in == null) {
+        throw new IllegalStateException("missing page script " + name);
+      }
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.browser;
+
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Route;
+import org.apache.commons.lang3.StringUtils;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Aborts requests the scraper never reads, by Playwright resource type (image, media, font, ...) or by domain.
+ */
+public class ResourceBlocker {
+  public static final ResourceBlocker NONE = new ResourceBlocker(Collections.emptySet(), Collections.emptyList());
+
+  private final Set<String>  resourceTypes;
+  private final List<String> domains;
+
+  public ResourceBlocker(Set<String> resourceTypes, List<String> domains) {
+    this.resourceTypes = resourceTypes;
+    this.domains = domains;
+  }
+
+  /**
+   * @param resourceTypes
+   *     comma separated Playwright resource types
+   * @param domains
+   *     comma separated domains, subdomains are blocked as well
+   * @return the blocker
+   */
+  public static ResourceBlocker of(String resourceTypes, String domains) {
+    return new ResourceBlocker(split(resourceTypes).stream().filter(type -> !"document".equals(type)).collect(Collectors.toSet()),
+        split(domains));
+  }
+
+  private static List<String> split(String value) {
+    if (StringUtils.isBlank(value)) {
+      return Collections.emptyList();
+    }
+    return Arrays.stream(value.split("[,;\\s]+"))
+        .map(s -> s.trim().toLowerCase(Locale.ROOT))
+        .filter(StringUtils::isNotEmpty)
+        .collect(Collectors.toList());
+  }
+
+  public boolean isEmpty() {
+    return resourceTypes.isEmpty() && domains.isEmpty();
+  }
+
+  public boolean isBlocked(String resourceType, String url) {
+    if (resourceTypes.contains(resourceType)) {
+      return true;
+    }
+    if (domains.isEmpty()) {
+      return false;
+    }
+    String host;
+    try {
+      host = URI.create(url).getHost();
+    }
+    catch (IllegalArgumentException e) {
+      return false;
+    }
+    if (host == null) {
+      return false;
+    }
+    host = host.toLowerCase(Locale.ROOT);
+    for (String domain : domains) {
+      if (host.equals(domain) || host.endsWith("." + domain)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  void install(BrowserContext context) {
+    if (isEmpty()) {
+      return;
+    }
+    context.route("**/*", this::handle);
+  }
+
+  private void handle(Route route) {
+    if (isBlocked(route.request().resourceType(), route.request().url())) {
+      route.abort();
+    }
+    else {
+      route.resume();
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.cache;
+
+import xyz.ifnotnull.tmm.scraper.pornhub.artwork.ArtworkProber;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory LRU cache of artwork probes, keyed by viewkey.
+ * <p>
+ * tinyMediaManager asks for the artwork of a video right after its metadata and again whenever the artwork is changed by hand. The
+ * images behind an url rarely change, but they can disappear, so the probes are not kept for long.
+ */
+public class ArtworkProbeCache {
+  private final Map<String, Entry> entries;
+  private final long               ttlNanos;
+
+  /**
+   * @param ttl
+   *     how long probes are served from the cache, zero disables the cache
+   * @param maxEntries
+   *     the number of videos to keep, the least recently used ones are dropped first
+   */
+  public ArtworkProbeCache(Duration ttl, int maxEntries) {
+    int capacity = Math.max(1, maxEntries);
+    this.ttlNanos = ttl.toNanos();
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * @return the probes of the video keyed by url, empty if there is no fresh entry
+   */
+  public synchronized Map<String, ArtworkProber.Probe> get(String viewKey) {
+    if (ttlNanos <= 0) {
+      return Collections.emptyMap();
+    }
+    Entry entry = entries.get(viewKey);
+    if (entry == null) {
+      return Collections.emptyMap();
+    }
+    if (System.nanoTime() - entry.storedAt > ttlNanos) {
+      entries.remove(viewKey);
+      return Collections.emptyMap();
+    }
+    return entry.probes;
+  }
+
+  /**
+   * Adds probes to the ones of the video, only probes with a final answer are kept.
+   */
+  public synchronized void put(String viewKey, Map<String, ArtworkProber.Probe> probes) {
+    if (ttlNanos <= 0) {
+      return;
+    }
+    Map<String, ArtworkProber.Probe> merged = new LinkedHashMap<>(get(viewKey));
+    probes.forEach((url, probe) -> {
+      if (probe.isAnswered()) {
+        merged.put(url, probe);
+      }
+    });
+    entries.put(viewKey, new Entry(Collections.unmodifiableMap(merged), System.nanoTime()));
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  private static final class Entry {
+    private final Map<String, ArtworkProber.Probe> probes;
+    private final long                             storedAt;
+
+    private Entry(Map<String, ArtworkProber.Probe> probes, long storedAt) {
+      this.probes = probes;
+      this.storedAt = storedAt;
+    }
+  }
+}
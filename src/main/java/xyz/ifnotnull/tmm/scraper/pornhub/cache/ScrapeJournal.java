@@ -0,0 +1,316 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.cache;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.ScrapeTier;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.SearchResultItem;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only journal of the work done for batch scrapes, so that a batch which died halfway (a crashed browser, a restart of
+ * tinyMediaManager) does not start from scratch: the searches which were resolved shortly before are answered from the journal, and
+ * failed videos are retried with an exponential backoff instead of on every run. A scraped video clears its failures.
+ * <p>
+ * Every event is one line of JSON, written with a single append and forced to disk. A line torn by a crash is cut off when the journal
+ * is opened again. Events older than the retention are dropped then, and the file is rewritten once most of its lines are superseded.
+ */
+public class ScrapeJournal implements AutoCloseable {
+  private static final Logger logger              = LoggerFactory.getLogger(ScrapeJournal.class);
+  private static final long   BASE_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  private static final long   MAX_BACKOFF_MILLIS  = TimeUnit.HOURS.toMillis(12);
+  private static final int    COMPACT_MIN_LINES   = 1000;
+
+  private final ObjectMapper         mapper   = JsonMapper.builder()
+      .serializationInclusion(JsonInclude.Include.NON_NULL)
+      .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+      .build();
+  private final Map<String, Event>   resolved = new HashMap<>();
+  private final Map<String, Event>   scraped  = new HashMap<>();
+  private final Map<String, Failure> failures = new HashMap<>();
+  private final Path                 file;
+  private final long                 retentionMillis;
+  private       FileChannel          channel;
+
+  /**
+   * Opens the journal, replaying the events within the retention. If the file cannot be opened the journal is kept in memory.
+   *
+   * @param file
+   *     the journal file
+   * @param retention
+   *     how long events are kept
+   */
+  public ScrapeJournal(Path file, Duration retention) {
+    this.file = file;
+    this.retentionMillis = retention.toMillis();
+    try {
+      Files.createDirectories(file.getParent());
+      int lines = replay();
+      int live = resolved.size() + scraped.size() + failures.values().stream().mapToInt(f -> f.events.size()).sum();
+      if (lines > COMPACT_MIN_LINES && lines > 2 * live) {
+        compact();
+      }
+      channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      if (channel.size() > 0 && !endsWithNewline()) {
+        // the crash hit right before the line break
+        channel.write(ByteBuffer.wrap(new byte[] { '\n' }));
+      }
+    }
+    catch (IOException e) {
+      logger.warn("could not open {}, journaling in memory only: {}", file, e.getMessage());
+    }
+  }
+
+  /**
+   * @return the number of lines read
+   */
+  private int replay() throws IOException {
+    if (!Files.exists(file)) {
+      return 0;
+    }
+    long cutoff = System.currentTimeMillis() - retentionMillis;
+    long validLength = 0;
+    int lines = 0;
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines++;
+        Event event;
+        try {
+          event = mapper.readValue(line, Event.class);
+        }
+        catch (IOException e) {
+          // only the last line can be torn, everything after it was never written
+          logger.debug("journal ends with an incomplete line, cutting it off");
+          break;
+        }
+        // the last line may lack its line break
+        validLength = Math.min(validLength + line.getBytes(StandardCharsets.UTF_8).length + 1, Files.size(file));
+        if (event.type != null && event.key != null && event.at >= cutoff) {
+          apply(event);
+        }
+      }
+    }
+    if (validLength < Files.size(file)) {
+      try (FileChannel truncate = FileChannel.open(file, StandardOpenOption.WRITE)) {
+        truncate.truncate(validLength);
+      }
+    }
+    return lines;
+  }
+
+  private boolean endsWithNewline() throws IOException {
+    long length = Files.size(file);
+    if (length == 0) {
+      return true;
+    }
+    try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer last = ByteBuffer.allocate(1);
+      in.read(last, length - 1);
+      return last.get(0) == '\n';
+    }
+  }
+
+  private void apply(Event event) {
+    switch (event.type) {
+      case RESOLVED:
+        resolved.put(event.key, event);
+        break;
+      case SCRAPED:
+        scraped.put(event.key, event);
+        failures.remove(event.key);
+        break;
+      case FAILED:
+        failures.computeIfAbsent(event.key, k -> new Failure()).events.add(event);
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Rewrites the journal with the live events only.
+   */
+  private void compact() throws IOException {
+    List<Event> live = new ArrayList<>(resolved.values());
+    live.addAll(scraped.values());
+    failures.values().forEach(f -> live.addAll(f.events));
+    live.sort((a, b) -> Long.compare(a.at, b.at));
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      for (Event event : live) {
+        out.write(ByteBuffer.wrap(line(event)));
+      }
+      out.force(true);
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    logger.debug("compacted the scrape journal to {} events", live.size());
+  }
+
+  /**
+   * @param maxAge
+   *     how old the results may be, search results go stale much faster than the retention of the journal
+   * @return the search results the query was resolved to, null if it was not resolved within the given age
+   */
+  public synchronized List<SearchResultItem> getResolved(String query, String language, Duration maxAge) {
+    Event event = resolved.get(SearchResultCache.key(query, language));
+    return event == null || System.currentTimeMillis() - event.at > maxAge.toMillis() ? null : event.items;
+  }
+
+  public synchronized void resolved(String query, String language, List<SearchResultItem> items) {
+    Event event = new Event(EventType.RESOLVED, SearchResultCache.key(query, language));
+    event.items = Collections.unmodifiableList(new ArrayList<>(items));
+    resolved.put(event.key, event);
+    append(event);
+  }
+
+  public synchronized void scraped(String viewKey, ScrapeTier tier) {
+    Event known = scraped.get(viewKey);
+    if (known != null && known.tier != null && known.tier.covers(tier) && !failures.containsKey(viewKey)) {
+      // already journaled, do not grow the file on every cache hit
+      return;
+    }
+    Event event = new Event(EventType.SCRAPED, viewKey);
+    event.tier = tier;
+    apply(event);
+    append(event);
+  }
+
+  /**
+   * @param cause
+   *     why the video could not be scraped, e.g. the status or the exception
+   */
+  public synchronized void failed(String viewKey, String cause) {
+    Event event = new Event(EventType.FAILED, viewKey);
+    event.cause = cause;
+    apply(event);
+    append(event);
+  }
+
+  /**
+   * @return the number of failed attempts since the video was last scraped
+   */
+  public synchronized int getFailures(String viewKey) {
+    Failure failure = failures.get(viewKey);
+    return failure == null ? 0 : failure.events.size();
+  }
+
+  /**
+   * @return the cause of the last failed attempt or null
+   */
+  public synchronized String getLastCause(String viewKey) {
+    Failure failure = failures.get(viewKey);
+    return failure == null ? null : failure.last().cause;
+  }
+
+  /**
+   * @return the milliseconds until the next attempt for a failed video is due, 0 if it may be tried now; the backoff doubles with every
+   *     failed attempt
+   */
+  public synchronized long getBackoffMillis(String viewKey) {
+    Failure failure = failures.get(viewKey);
+    if (failure == null) {
+      return 0;
+    }
+    int attempts = failure.events.size();
+    long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempts - 1, 20));
+    return Math.max(0, failure.last().at + backoff - System.currentTimeMillis());
+  }
+
+  private void append(Event event) {
+    if (channel == null) {
+      return;
+    }
+    try {
+      // one write per line, a crash can only tear the last one
+      channel.write(ByteBuffer.wrap(line(event)));
+      channel.force(false);
+    }
+    catch (IOException e) {
+      logger.warn("could not write to {}, journaling in memory only: {}", file, e.getMessage());
+      closeChannel();
+    }
+  }
+
+  private byte[] line(Event event) throws IOException {
+    byte[] json = mapper.writeValueAsBytes(event);
+    byte[] line = new byte[json.length + 1];
+    System.arraycopy(json, 0, line, 0, json.length);
+    line[json.length] = '\n';
+    return line;
+  }
+
+  private void closeChannel() {
+    try {
+      channel.close();
+    }
+    catch (IOException e) {
+      logger.debug("could not close {}: {}", file, e.getMessage());
+    }
+    channel = null;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (channel != null) {
+      closeChannel();
+    }
+  }
+
+  private enum EventType {
+    RESOLVED,
+    SCRAPED,
+    FAILED
+  }
+
+  /**
+   * One line of the journal.
+   */
+  @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+  private static final class Event {
+    private long                   at;
+    private EventType              type;
+    private String                 key;
+    private ScrapeTier             tier;
+    private String                 cause;
+    private List<SearchResultItem> items;
+
+    private Event() {
+    }
+
+    private Event(EventType type, String key) {
+      this.at = System.currentTimeMillis();
+      this.type = type;
+      this.key = key;
+    }
+  }
+
+  private static final class Failure {
+    private final List<Event> events = new ArrayList<>();
+
+    private Event last() {
+      return events.get(events.size() - 1);
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.cache;
+
+import org.h2.mvstore.MVStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The persistent key/value store of the scraper, backed by the same H2 MVStore engine tinyMediaManager uses for its own database. If
+ * the store file cannot be opened all maps are kept in memory for the lifetime of the JVM instead.
+ */
+public final class ScraperStore implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(ScraperStore.class);
+
+  private final MVStore store;
+
+  private ScraperStore(MVStore store) {
+    this.store = store;
+  }
+
+  /**
+   * Opens (or creates) the store file.
+   *
+   * @param file
+   *     the store file
+   * @return the store, never null
+   */
+  public static ScraperStore open(Path file) {
+    try {
+      Files.createDirectories(file.getParent());
+      return new ScraperStore(new MVStore.Builder().fileName(file.toString()).compress().autoCommitDelay(1000).open());
+    }
+    catch (Exception e) {
+      logger.warn("could not open {}, caching in memory only: {}", file, e.getMessage());
+      return new ScraperStore(null);
+    }
+  }
+
+  public <K, V> ConcurrentMap<K, V> openMap(String name) {
+    if (store == null) {
+      return new ConcurrentHashMap<>();
+    }
+    return store.openMap(name);
+  }
+
+  public boolean isPersistent() {
+    return store != null;
+  }
+
+  @Override
+  public void close() {
+    if (store != null && !store.isClosed()) {
+      store.close();
+    }
+  }
+}
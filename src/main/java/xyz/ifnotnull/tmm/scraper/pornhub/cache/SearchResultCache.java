@@ -0,0 +1,99 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.cache;
+
+import org.apache.commons.lang3.StringUtils;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.SearchResultItem;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory LRU cache of search results, keyed by normalized query and language.
+ * <p>
+ * tinyMediaManager searches the same query more than once (a re-search, several files of the same uploader). Search results change
+ * faster than video pages, so they are neither persisted nor kept for long.
+ */
+public class SearchResultCache {
+  private static final String SEPARATOR = "|";
+
+  private final Map<String, Entry> entries;
+  private final long               ttlNanos;
+
+  /**
+   * @param ttl
+   *     how long results are served from the cache, zero disables the cache
+   * @param maxEntries
+   *     the number of queries to keep, the least recently used ones are dropped first
+   */
+  public SearchResultCache(Duration ttl, int maxEntries) {
+    int capacity = Math.max(1, maxEntries);
+    this.ttlNanos = ttl.toNanos();
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * @return the cached results or null if there is no fresh entry
+   */
+  public synchronized List<SearchResultItem> get(String query, String language) {
+    if (ttlNanos <= 0) {
+      return null;
+    }
+    String key = key(query, language);
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (System.nanoTime() - entry.storedAt > ttlNanos) {
+      entries.remove(key);
+      return null;
+    }
+    return entry.items;
+  }
+
+  public synchronized void put(String query, String language, List<SearchResultItem> items) {
+    if (ttlNanos > 0) {
+      entries.put(key(query, language), new Entry(Collections.unmodifiableList(items), System.nanoTime()));
+    }
+  }
+
+  /**
+   * @return how long results are served from the cache
+   */
+  public Duration getTtl() {
+    return Duration.ofNanos(ttlNanos);
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  /**
+   * @param query
+   *     the search query
+   * @param language
+   *     the language of the results
+   * @return the cache key, queries which differ in case and whitespace only share it
+   */
+  public static String key(String query, String language) {
+    return StringUtils.normalizeSpace(StringUtils.defaultString(query)).toLowerCase(Locale.ROOT) + SEPARATOR + StringUtils.defaultString(
+        language);
+  }
+
+  private static final class Entry {
+    private final List<SearchResultItem> items;
+    private final long                   storedAt;
+
+    private Entry(List<SearchResultItem> items, long storedAt) {
+      this.items = items;
+      this.storedAt = storedAt;
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.cache;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.VideoStatistics;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The last known {@link VideoStatistics} of every refreshed video, keyed by viewkey. Unlike the page cache nothing expires here: an
+ * entry is what the next refresh compares against and which validators it sends.
+ */
+public class StatisticsStore {
+  private static final Logger logger = LoggerFactory.getLogger(StatisticsStore.class);
+
+  private final ObjectMapper                  mapper = JsonMapper.builder()
+      .serializationInclusion(JsonInclude.Include.NON_NULL)
+      .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+      .build();
+  private final ConcurrentMap<String, byte[]> entries;
+
+  public StatisticsStore(ScraperStore store) {
+    this.entries = store.openMap("statistics");
+  }
+
+  /**
+   * @return the statistics of the last refresh or null
+   */
+  public VideoStatistics get(String viewKey) {
+    byte[] value = entries.get(viewKey);
+    if (value == null) {
+      return null;
+    }
+    try {
+      return mapper.readValue(value, VideoStatistics.class);
+    }
+    catch (IOException e) {
+      logger.debug("dropping unreadable statistics of {}: {}", viewKey, e.getMessage());
+      entries.remove(viewKey);
+      return null;
+    }
+  }
+
+  public void put(VideoStatistics statistics) {
+    try {
+      entries.put(statistics.getViewKey(), mapper.writeValueAsBytes(statistics));
+    }
+    catch (IOException e) {
+      logger.debug("could not store the statistics of {}: {}", statistics.getViewKey(), e.getMessage());
+    }
+  }
+}
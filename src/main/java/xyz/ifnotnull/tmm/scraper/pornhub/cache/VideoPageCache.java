@@ -0,0 +1,204 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.cache;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.VideoPage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Persistent cache of extracted {@link VideoPage}s, keyed by viewkey and language. An index of the cached languages of every video lets
+ * a scrape in one language reuse the language independent fields of another.
+ * <p>
+ * Every value is the write timestamp followed by the page as compact json; the store compresses the pages on disk. Entries expire
+ * after the TTL, and once the cache grows past its maximum size the least recently read entries are evicted.
+ */
+public class VideoPageCache {
+  private static final Logger logger             = LoggerFactory.getLogger(VideoPageCache.class);
+  private static final String SEPARATOR          = "|";
+  private static final char   LANGUAGE_SEPARATOR = ',';
+
+  private final ObjectMapper                  mapper   = JsonMapper.builder()
+      .serializationInclusion(JsonInclude.Include.NON_EMPTY)
+      .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+      .build();
+  private final AtomicBoolean                 evicting = new AtomicBoolean();
+  private final ConcurrentMap<String, byte[]> entries;
+  private final ConcurrentMap<String, Long>   lastAccess;
+  private final ConcurrentMap<String, String> languages;
+  private final long                          ttlMillis;
+  private final int                           maxEntries;
+
+  public VideoPageCache(ScraperStore store, Duration ttl, int maxEntries) {
+    this.entries = store.openMap("videoPages");
+    this.lastAccess = store.openMap("videoPages.lastAccess");
+    this.languages = store.openMap("videoPages.languages");
+    this.ttlMillis = ttl.toMillis();
+    this.maxEntries = Math.max(1, maxEntries);
+  }
+
+  /**
+   * @return the cached page or null if there is no fresh entry
+   */
+  public VideoPage get(String viewKey, String language) {
+    String key = key(viewKey, language);
+    byte[] value = entries.get(key);
+    if (value == null || value.length <= Long.BYTES) {
+      return null;
+    }
+
+    long now = System.currentTimeMillis();
+    long storedAt = ByteBuffer.wrap(value).getLong();
+    if (now - storedAt > ttlMillis) {
+      remove(key);
+      return null;
+    }
+
+    try {
+      VideoPage videoPage = mapper.readValue(value, Long.BYTES, value.length - Long.BYTES, VideoPage.class);
+      lastAccess.put(key, now);
+      return videoPage;
+    }
+    catch (IOException e) {
+      logger.debug("dropping unreadable cache entry {}: {}", key, e.getMessage());
+      remove(key);
+      return null;
+    }
+  }
+
+  /**
+   * @return a fresh page of the video in any language but the given one, or null
+   */
+  public VideoPage getOtherLanguage(String viewKey, String language) {
+    // the index may still list languages which have expired or been evicted since, get() skips them
+    String cached = languages.get(viewKey);
+    if (cached == null) {
+      return null;
+    }
+    for (String other : StringUtils.split(cached, LANGUAGE_SEPARATOR)) {
+      if (!other.equals(StringUtils.defaultString(language))) {
+        VideoPage videoPage = get(viewKey, other);
+        if (videoPage != null) {
+          return videoPage;
+        }
+      }
+    }
+    return null;
+  }
+
+  public void put(String viewKey, String language, VideoPage videoPage) {
+    byte[] json;
+    try {
+      json = mapper.writeValueAsBytes(videoPage);
+    }
+    catch (IOException e) {
+      logger.debug("could not cache {}: {}", viewKey, e.getMessage());
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    byte[] value = ByteBuffer.allocate(Long.BYTES + json.length).putLong(now).put(json).array();
+    String key = key(viewKey, language);
+    entries.put(key, value);
+    lastAccess.put(key, now);
+    if (StringUtils.isNotEmpty(language)) {
+      languages.merge(viewKey, language, (known, added) -> ArrayUtils.contains(StringUtils.split(known, LANGUAGE_SEPARATOR), added)
+          ? known
+          : known + LANGUAGE_SEPARATOR + added);
+    }
+
+    evictIfNeeded();
+  }
+
+  /**
+   * Changes all cached languages of the given video in place, they keep their age.
+   *
+   * @param viewKey
+   *     the viewkey of the video
+   * @param change
+   *     applied to every cached page of the video
+   */
+  public void update(String viewKey, Consumer<VideoPage> change) {
+    // the index names the languages of the video like for getOtherLanguage(), pages without a language are not in it
+    List<String> keys = new ArrayList<>();
+    keys.add(key(viewKey, null));
+    String cached = languages.get(viewKey);
+    if (cached != null) {
+      for (String language : StringUtils.split(cached, LANGUAGE_SEPARATOR)) {
+        keys.add(key(viewKey, language));
+      }
+    }
+    for (String key : keys) {
+      byte[] value = entries.get(key);
+      if (value == null || value.length <= Long.BYTES) {
+        continue;
+      }
+      try {
+        VideoPage videoPage = mapper.readValue(value, Long.BYTES, value.length - Long.BYTES, VideoPage.class);
+        change.accept(videoPage);
+        byte[] json = mapper.writeValueAsBytes(videoPage);
+        entries.put(key, ByteBuffer.allocate(Long.BYTES + json.length).putLong(ByteBuffer.wrap(value).getLong()).put(json).array());
+      }
+      catch (IOException e) {
+        logger.debug("dropping unreadable cache entry {}: {}", key, e.getMessage());
+        remove(key);
+      }
+    }
+  }
+
+  /**
+   * Drops all cached languages of the given video.
+   */
+  public void invalidate(String viewKey) {
+    String prefix = viewKey + SEPARATOR;
+    entries.keySet().removeIf(key -> key.startsWith(prefix));
+    lastAccess.keySet().removeIf(key -> key.startsWith(prefix));
+    languages.remove(viewKey);
+  }
+
+  private void remove(String key) {
+    entries.remove(key);
+    lastAccess.remove(key);
+  }
+
+  private void evictIfNeeded() {
+    if (entries.size() <= maxEntries || !evicting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      // trim to 90% so that we do not scan the whole cache on every following put
+      int toRemove = entries.size() - maxEntries * 9 / 10;
+      List<String> oldest = lastAccess.entrySet()
+          .stream()
+          .sorted(Map.Entry.comparingByValue(Comparator.naturalOrder()))
+          .limit(toRemove)
+          .map(Map.Entry::getKey)
+          .collect(Collectors.toList());
+      oldest.forEach(this::remove);
+      logger.debug("evicted {} cached pages", oldest.size());
+    }
+    finally {
+      evicting.set(false);
+    }
+  }
+
+  private static String key(String viewKey, String language) {
+    return viewKey + SEPARATOR + StringUtils.defaultString(language);
+  }
+}
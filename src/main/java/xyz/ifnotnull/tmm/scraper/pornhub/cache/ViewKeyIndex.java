@@ -0,0 +1,96 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.cache;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Confirmed matches of search queries to viewkeys, so that a file which was matched once is resolved without a search on every
+ * rescrape. A match is kept under the normalized query, which tinyMediaManager builds from the file name or the title of the movie.
+ * <p>
+ * A match expires after the time to live unless it is confirmed again, and it can be {@link #invalidate(String) invalidated} when it
+ * turns out to be wrong.
+ */
+public class ViewKeyIndex {
+  private static final Pattern NON_ALNUM  = Pattern.compile("[^\\p{L}\\p{N}]+");
+  private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+  private final ConcurrentMap<String, String> names;
+  private final long                          ttlMillis;
+
+  /**
+   * @param ttl
+   *     how long a match is valid after it was last confirmed
+   */
+  public ViewKeyIndex(ScraperStore store, Duration ttl) {
+    this.names = store.openMap("viewKeyIndex.names");
+    this.ttlMillis = ttl.toMillis();
+  }
+
+  /**
+   * @param name
+   *     a file name without extension, a title or a search query
+   * @return the confirmed viewkey or null
+   */
+  public String resolve(String name) {
+    String key = normalize(name);
+    return key.isEmpty() ? null : get(names, key);
+  }
+
+  /**
+   * Forgets the match of a name, e.g. because the user searched for the file again.
+   *
+   * @return the viewkey the name was matched to or null
+   */
+  public String invalidate(String name) {
+    String key = normalize(name);
+    String entry = key.isEmpty() ? null : names.remove(key);
+    return entry == null ? null : StringUtils.substringBefore(entry, " ");
+  }
+
+  /**
+   * @return the viewkey of an entry written as {@code <viewkey> <confirmed at>}, null if there is none or it has expired
+   */
+  private String get(ConcurrentMap<String, String> map, String key) {
+    String entry = map.get(key);
+    if (entry == null) {
+      return null;
+    }
+    long confirmedAt = NumberUtils.toLong(StringUtils.substringAfter(entry, " "));
+    if (System.currentTimeMillis() - confirmedAt > ttlMillis) {
+      map.remove(key, entry);
+      return null;
+    }
+    return StringUtils.substringBefore(entry, " ");
+  }
+
+  private static String entry(String viewKey) {
+    return viewKey + " " + System.currentTimeMillis();
+  }
+
+  /**
+   * Remembers the match of a name, e.g. of a search query whose result was scraped.
+   */
+  public void confirm(String name, String viewKey) {
+    String key = normalize(name);
+    if (!key.isEmpty() && StringUtils.isNotBlank(viewKey)) {
+      names.put(key, entry(viewKey));
+    }
+  }
+
+  /**
+   * @return the name in lower case without diacritics, every run of other characters than letters and digits replaced by one space
+   */
+  public static String normalize(String name) {
+    if (name == null) {
+      return "";
+    }
+    String decomposed = DIACRITICS.matcher(Normalizer.normalize(name, Normalizer.Form.NFKD)).replaceAll("");
+    return NON_ALNUM.matcher(decomposed.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+  }
+}
@@ -24,6 +24,24 @@ public class LdJson {
   @JsonProperty("interactionStatistic")
   private List<InteractionCounter> interactionStatistic;
 
+  /**
+   * @return a shallow copy, the interaction counters are shared
+   */
+  public LdJson copy() {
+    LdJson copy = new LdJson();
+    copy.vkey = vkey;
+    copy.context = context;
+    copy.type = type;
+    copy.name = name;
+    copy.duration = duration;
+    copy.thumbnailUrl = thumbnailUrl;
+    copy.uploadDate = uploadDate;
+    copy.description = description;
+    copy.author = author;
+    copy.interactionStatistic = interactionStatistic;
+    return copy;
+  }
+
   // getters and setters
 
   public String getContext() {
@@ -0,0 +1,47 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.dto;
+
+import java.util.Locale;
+
+/**
+ * How much of a video page a scrape needs, every tier includes the ones before it.
+ */
+public enum ScrapeTier {
+  /**
+   * ids, title, year and poster: enough to identify a file in a search
+   */
+  IDENTIFY,
+  /**
+   * plus plot, rating, the names of cast and crew, genres, tags and the trailer
+   */
+  CORE,
+  /**
+   * plus the video frames as fanart and the images of cast and crew
+   */
+  FULL;
+
+  /**
+   * @return true if data of this tier contains everything the other tier needs
+   */
+  public boolean covers(ScrapeTier other) {
+    return compareTo(other) >= 0;
+  }
+
+  /**
+   * @param name
+   *     the tier name, case insensitive
+   * @param defaultTier
+   *     returned for unknown names
+   * @return the tier
+   */
+  public static ScrapeTier of(String name, ScrapeTier defaultTier) {
+    if (name != null) {
+      try {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+      }
+      catch (IllegalArgumentException e) {
+        // fall through
+      }
+    }
+    return defaultTier;
+  }
+}
@@ -0,0 +1,58 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * One entry of the {@code #videoSearchResult} list.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SearchResultItem {
+
+  private String viewKey;
+  private String videoId;
+  private String title;
+  private String thumbUrl;
+  private String added;
+
+  // getters and setters
+
+  public String getViewKey() {
+    return viewKey;
+  }
+
+  public void setViewKey(String viewKey) {
+    this.viewKey = viewKey;
+  }
+
+  public String getVideoId() {
+    return videoId;
+  }
+
+  public void setVideoId(String videoId) {
+    this.videoId = videoId;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public void setTitle(String title) {
+    this.title = title;
+  }
+
+  public String getThumbUrl() {
+    return thumbUrl;
+  }
+
+  public void setThumbUrl(String thumbUrl) {
+    this.thumbUrl = thumbUrl;
+  }
+
+  public String getAdded() {
+    return added;
+  }
+
+  public void setAdded(String added) {
+    this.added = added;
+  }
+}
@@ -0,0 +1,270 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Everything the scraper reads from a {@code view_video.php} page, independent of whether it was extracted from the raw HTML or from a
+ * rendered browser page.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class VideoPage {
+
+  private String          viewKey;
+  private String          videoId;
+  private LdJson          ldJson;
+  private String          thumbUrlPattern;
+  private String          titleTranslated;
+  private String          titleOriginal;
+  private Integer         votesUp;
+  private Integer         votesDown;
+  private String          trailerUrl;
+  private Performer       uploader;
+  private List<Performer> pornstars  = new ArrayList<>();
+  private List<String>    categories = new ArrayList<>();
+  private List<String>    tags       = new ArrayList<>();
+  private ScrapeTier      tier;
+
+  /**
+   * @return true if all fields required to build the metadata have been found
+   */
+  @JsonIgnore
+  public boolean isComplete() {
+    return isComplete(ScrapeTier.FULL);
+  }
+
+  /**
+   * @return true if all fields required to build the metadata of the given tier have been found
+   */
+  public boolean isComplete(ScrapeTier scrapeTier) {
+    boolean identified = ldJson != null && StringUtils.isNotBlank(ldJson.getThumbnailUrl()) && StringUtils.isNotBlank(videoId) && (
+        StringUtils.isNotBlank(titleTranslated) || StringUtils.isNotBlank(titleOriginal));
+    return identified && (scrapeTier == ScrapeTier.IDENTIFY || uploader != null);
+  }
+
+  /**
+   * @return true if the page was fetched for at least the given tier, pages cached before there were tiers count as full
+   */
+  public boolean covers(ScrapeTier scrapeTier) {
+    return tier == null || tier.covers(scrapeTier);
+  }
+
+  /**
+   * @return true if the page has a title in its language
+   */
+  @JsonIgnore
+  public boolean hasTitle() {
+    return StringUtils.isNotBlank(titleTranslated) || StringUtils.isNotBlank(titleOriginal);
+  }
+
+  /**
+   * @return true if the page has a title in its language, on a page cut off before the player script with the titles that is the name
+   *     of the ld+json block
+   */
+  @JsonIgnore
+  public boolean hasTranslatedTitle() {
+    return hasTitle() || ldJson != null && StringUtils.isNotBlank(ldJson.getName());
+  }
+
+  /**
+   * Combines the language independent fields of this page with the translated ones of the same video in another language. Only the
+   * titles, the name and description of the ld+json block and the category labels differ between languages; ids, votes, artwork,
+   * dates, performers, tags and the trailer are the same in all of them.
+   *
+   * @param translated
+   *     the page in the wanted language, only its translated fields are read
+   * @return a new page with the tier of this one, neither page is changed
+   */
+  public VideoPage withTranslation(VideoPage translated) {
+    VideoPage videoPage = new VideoPage();
+    videoPage.viewKey = viewKey;
+    videoPage.videoId = videoId;
+    videoPage.thumbUrlPattern = thumbUrlPattern;
+    videoPage.votesUp = votesUp;
+    videoPage.votesDown = votesDown;
+    videoPage.trailerUrl = trailerUrl;
+    videoPage.uploader = uploader;
+    videoPage.pornstars = pornstars;
+    videoPage.tags = tags;
+    videoPage.tier = tier;
+
+    // a translation cut off before the player script only has the title in the ld+json block
+    videoPage.titleTranslated = translated.titleTranslated == null && translated.ldJson != null
+        ? StringUtils.trimToNull(translated.ldJson.getName())
+        : translated.titleTranslated;
+    videoPage.titleOriginal = StringUtils.defaultIfBlank(translated.titleOriginal, titleOriginal);
+    videoPage.categories = translated.categories;
+    if (ldJson != null) {
+      videoPage.ldJson = ldJson.copy();
+      if (translated.ldJson != null) {
+        videoPage.ldJson.setName(translated.ldJson.getName());
+        videoPage.ldJson.setDescription(translated.ldJson.getDescription());
+      }
+    }
+    return videoPage;
+  }
+
+  // getters and setters
+
+  public String getViewKey() {
+    return viewKey;
+  }
+
+  public void setViewKey(String viewKey) {
+    this.viewKey = viewKey;
+  }
+
+  public String getVideoId() {
+    return videoId;
+  }
+
+  public void setVideoId(String videoId) {
+    this.videoId = videoId;
+  }
+
+  public LdJson getLdJson() {
+    return ldJson;
+  }
+
+  public void setLdJson(LdJson ldJson) {
+    this.ldJson = ldJson;
+  }
+
+  public String getThumbUrlPattern() {
+    return thumbUrlPattern;
+  }
+
+  public void setThumbUrlPattern(String thumbUrlPattern) {
+    this.thumbUrlPattern = thumbUrlPattern;
+  }
+
+  public String getTitleTranslated() {
+    return titleTranslated;
+  }
+
+  public void setTitleTranslated(String titleTranslated) {
+    this.titleTranslated = titleTranslated;
+  }
+
+  public String getTitleOriginal() {
+    return titleOriginal;
+  }
+
+  public void setTitleOriginal(String titleOriginal) {
+    this.titleOriginal = titleOriginal;
+  }
+
+  public Integer getVotesUp() {
+    return votesUp;
+  }
+
+  public void setVotesUp(Integer votesUp) {
+    this.votesUp = votesUp;
+  }
+
+  public Integer getVotesDown() {
+    return votesDown;
+  }
+
+  public void setVotesDown(Integer votesDown) {
+    this.votesDown = votesDown;
+  }
+
+  public String getTrailerUrl() {
+    return trailerUrl;
+  }
+
+  public void setTrailerUrl(String trailerUrl) {
+    this.trailerUrl = trailerUrl;
+  }
+
+  public Performer getUploader() {
+    return uploader;
+  }
+
+  public void setUploader(Performer uploader) {
+    this.uploader = uploader;
+  }
+
+  public List<Performer> getPornstars() {
+    return pornstars;
+  }
+
+  public void setPornstars(List<Performer> pornstars) {
+    this.pornstars = pornstars;
+  }
+
+  public List<String> getCategories() {
+    return categories;
+  }
+
+  public void setCategories(List<String> categories) {
+    this.categories = categories;
+  }
+
+  public List<String> getTags() {
+    return tags;
+  }
+
+  public void setTags(List<String> tags) {
+    this.tags = tags;
+  }
+
+  /**
+   * @return the deepest tier this page was fetched for, it may still miss fields the page did not have
+   */
+  public ScrapeTier getTier() {
+    return tier;
+  }
+
+  public void setTier(ScrapeTier tier) {
+    this.tier = tier;
+  }
+
+  // Inner class for uploaders and pornstars
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public static class Performer {
+    private String name;
+    private String thumbUrl;
+    private String profilePath;
+
+    public Performer() {
+    }
+
+    public Performer(String name, String thumbUrl, String profilePath) {
+      this.name = name;
+      this.thumbUrl = thumbUrl;
+      this.profilePath = profilePath;
+    }
+
+    // getters and setters
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public String getThumbUrl() {
+      return thumbUrl;
+    }
+
+    public void setThumbUrl(String thumbUrl) {
+      this.thumbUrl = thumbUrl;
+    }
+
+    public String getProfilePath() {
+      return profilePath;
+    }
+
+    public void setProfilePath(String profilePath) {
+      this.profilePath = profilePath;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.Objects;
+
+/**
+ * The counters of a video which change after the upload: votes, views and likes. Kept apart from the {@link VideoPage}, together
+ * with the validators of the response they were read from, so that a refresh can ask the site whether anything has changed.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class VideoStatistics {
+
+  private String  viewKey;
+  private Integer votesUp;
+  private Integer votesDown;
+  private Long    views;
+  private Long    likes;
+  private String  etag;
+  private String  lastModified;
+  private long    checkedAt;
+
+  /**
+   * @return true if no counter could be read
+   */
+  @JsonIgnore
+  public boolean isEmpty() {
+    return votesUp == null && votesDown == null && views == null && likes == null;
+  }
+
+  /**
+   * @return true if all counters are equal, the validators are not compared
+   */
+  public boolean sameCounts(VideoStatistics other) {
+    return other != null && Objects.equals(votesUp, other.votesUp) && Objects.equals(votesDown, other.votesDown) && Objects.equals(
+        views, other.views) && Objects.equals(likes, other.likes);
+  }
+
+  /**
+   * @return the share of up votes on a scale of 0 to 10, null if there are no votes
+   */
+  @JsonIgnore
+  public Float getRating() {
+    int votes = getVotes();
+    return votes > 0 ? 10.0f * votesUp / votes : null;
+  }
+
+  /**
+   * @return the number of up and down votes
+   */
+  @JsonIgnore
+  public int getVotes() {
+    return votesUp == null || votesDown == null ? 0 : votesUp + votesDown;
+  }
+
+  // getters and setters
+
+  public String getViewKey() {
+    return viewKey;
+  }
+
+  public void setViewKey(String viewKey) {
+    this.viewKey = viewKey;
+  }
+
+  public Integer getVotesUp() {
+    return votesUp;
+  }
+
+  public void setVotesUp(Integer votesUp) {
+    this.votesUp = votesUp;
+  }
+
+  public Integer getVotesDown() {
+    return votesDown;
+  }
+
+  public void setVotesDown(Integer votesDown) {
+    this.votesDown = votesDown;
+  }
+
+  public Long getViews() {
+    return views;
+  }
+
+  public void setViews(Long views) {
+    this.views = views;
+  }
+
+  public Long getLikes() {
+    return likes;
+  }
+
+  public void setLikes(Long likes) {
+    this.likes = likes;
+  }
+
+  public String getEtag() {
+    return etag;
+  }
+
+  public void setEtag(String etag) {
+    this.etag = etag;
+  }
+
+  public String getLastModified() {
+    return lastModified;
+  }
+
+  public void setLastModified(String lastModified) {
+    this.lastModified = lastModified;
+  }
+
+  public long getCheckedAt() {
+    return checkedAt;
+  }
+
+  public void setCheckedAt(long checkedAt) {
+    this.checkedAt = checkedAt;
+  }
+}
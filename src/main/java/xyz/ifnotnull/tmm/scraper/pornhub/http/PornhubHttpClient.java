@@ -0,0 +1,419 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.http;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xyz.ifnotnull.tmm.scraper.pornhub.metrics.ScraperMetrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Authenticator;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.HttpCookie;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Plain HTTP transport for pages that do not need a browser. The underlying {@link HttpClient} is shared by all scrapes: it pools
+ * connections, negotiates HTTP/2 and keeps the cookies which pass the age gate. Requests are paced by a {@link RequestGovernor} and
+ * retried with a jittered backoff on transport errors and on 429/502/503/504.
+ * <p>
+ * With a {@link ProxyPool} every attempt picks its own exit, a retry so leaves a failing proxy behind. Each exit gets its own client,
+ * the cookies are shared by all of them.
+ */
+public class PornhubHttpClient {
+  private static final Logger   logger          = LoggerFactory.getLogger(PornhubHttpClient.class);
+  private static final String   USER_AGENT      = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) "
+      + "Chrome/119.0.0.0 Safari/537.36";
+  private static final String[] AGE_GATE_COOKIE = { "accessAgeDisclaimerPH", "age_verified", "accessPH" };
+
+  private final HttpClient                      client;
+  private final Map<ProxyPool.Exit, HttpClient> proxyClients = new ConcurrentHashMap<>();
+  private final URI                             baseUri;
+  private final CookieManager                   cookieManager;
+  private final Duration                        requestTimeout;
+  private final RequestGovernor                 governor;
+  private final int                             maxRetries;
+  private final ScraperMetrics                  metrics;
+  private final ProxyPool                       proxyPool;
+  private       List<ProxyPool.Exit>            clientExits;
+
+  /**
+   * @param proxyPool
+   *     the proxies to send the requests through, an empty pool sends them directly
+   */
+  public PornhubHttpClient(String baseUrl, Duration requestTimeout, RequestGovernor governor, int maxRetries, ScraperMetrics metrics,
+      ProxyPool proxyPool) {
+    this.requestTimeout = requestTimeout;
+    this.governor = governor;
+    this.maxRetries = Math.max(0, maxRetries);
+    this.metrics = metrics;
+    this.proxyPool = proxyPool;
+    this.cookieManager = new CookieManager(null, CookiePolicy.ACCEPT_ALL);
+    this.baseUri = URI.create(baseUrl);
+    addAgeGateCookies();
+
+    this.client = newClient().build();
+  }
+
+  private HttpClient.Builder newClient() {
+    return HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .connectTimeout(Duration.ofSeconds(15))
+        .cookieHandler(cookieManager);
+  }
+
+  private HttpClient client(ProxyPool.Exit exit) {
+    if (exit == null) {
+      return client;
+    }
+    pruneClients();
+    return proxyClients.computeIfAbsent(exit, e -> {
+      URI server = URI.create(e.getServer());
+      HttpClient.Builder builder = newClient().proxy(ProxySelector.of(new InetSocketAddress(server.getHost(), server.getPort())));
+      if (e.getUsername() != null) {
+        PasswordAuthentication credentials = new PasswordAuthentication(e.getUsername(), StringUtils.defaultString(e.getPassword())
+            .toCharArray());
+        builder.authenticator(new Authenticator() {
+          @Override
+          protected PasswordAuthentication getPasswordAuthentication() {
+            return getRequestorType() == RequestorType.PROXY ? credentials : null;
+          }
+        });
+      }
+      return builder.build();
+    });
+  }
+
+  /**
+   * Drops the clients of the exits which are no longer configured.
+   */
+  private synchronized void pruneClients() {
+    List<ProxyPool.Exit> exits = proxyPool.getExits();
+    if (exits != clientExits) {
+      proxyClients.keySet().retainAll(exits);
+      clientExits = exits;
+    }
+  }
+
+  /**
+   * @return false if all configured proxies are SOCKS proxies, which the client cannot use
+   */
+  public boolean isUsable() {
+    return proxyPool.hasHttp();
+  }
+
+  /**
+   * Fetches a page as text.
+   *
+   * @param url
+   *     the url to fetch
+   * @param language
+   *     the preferred content language
+   * @return the response of the last attempt, whatever status it has
+   * @throws IOException
+   *     the request could not be sent or the body could not be read, also after all retries
+   * @throws InterruptedException
+   *     the calling thread was interrupted
+   */
+  public Result get(String url, String language) throws IOException, InterruptedException {
+    return get(url, language, Collections.emptyMap(), null);
+  }
+
+  /**
+   * Fetches the beginning of a page: the download is cancelled as soon as the decoded body contains the stop marker, the rest of the
+   * page is never transferred. Conditional request headers are sent as given, a 304 is returned like any other status.
+   *
+   * @param url
+   *     the url to fetch
+   * @param language
+   *     the preferred content language
+   * @param headers
+   *     additional request headers, e.g. {@code If-None-Match}
+   * @param stopMarker
+   *     the bytes after which reading stops, null reads the whole body
+   * @return the response of the last attempt, its body ends with the stop marker if it was found
+   * @throws IOException
+   *     the request could not be sent or the body could not be read, also after all retries
+   * @throws InterruptedException
+   *     the calling thread was interrupted
+   */
+  public Result get(String url, String language, Map<String, String> headers, byte[] stopMarker) throws IOException,
+      InterruptedException {
+    HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+        .timeout(requestTimeout)
+        .header("User-Agent", USER_AGENT)
+        .header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8")
+        .header("Accept-Language", StringUtils.isBlank(language) ? "en" : language + ",en;q=0.5")
+        .header("Accept-Encoding", "gzip, deflate");
+    headers.forEach(builder::header);
+    return execute(url, builder.GET().build(), stopMarker, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Fetches the first bytes of a resource, e.g. the header of an image. The {@code Range} header asks the server for no more; of servers
+   * which ignore it and send the whole resource only the given length is read.
+   *
+   * @param url
+   *     the url to fetch
+   * @param length
+   *     the number of bytes to read at most
+   * @return the response of the last attempt, 206 if the server honored the range
+   * @throws IOException
+   *     the request could not be sent or the body could not be read, also after all retries
+   * @throws InterruptedException
+   *     the calling thread was interrupted
+   */
+  public Result getRange(String url, int length) throws IOException, InterruptedException {
+    HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+        .timeout(requestTimeout)
+        .header("User-Agent", USER_AGENT)
+        .header("Accept", "image/webp,image/*,*/*;q=0.8")
+        .header("Range", "bytes=0-" + (length - 1))
+        .GET()
+        .build();
+    return execute(url, request, null, length);
+  }
+
+  /**
+   * Fetches a whole image. Conditional request headers are sent as given, a 304 is returned like any other status.
+   *
+   * @param url
+   *     the url to fetch
+   * @param headers
+   *     additional request headers, e.g. {@code If-None-Match}
+   * @return the response of the last attempt, whatever status it has
+   * @throws IOException
+   *     the request could not be sent or the body could not be read, also after all retries
+   * @throws InterruptedException
+   *     the calling thread was interrupted
+   */
+  public Result getImage(String url, Map<String, String> headers) throws IOException, InterruptedException {
+    HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+        .timeout(requestTimeout)
+        .header("User-Agent", USER_AGENT)
+        .header("Accept", "image/webp,image/*,*/*;q=0.8");
+    headers.forEach(builder::header);
+    return execute(url, builder.GET().build(), null, Integer.MAX_VALUE);
+  }
+
+  private Result execute(String url, HttpRequest request, byte[] stopMarker, int maxBytes) throws IOException, InterruptedException {
+    for (int attempt = 0; ; attempt++) {
+      Result result = null;
+      IOException error = null;
+      long start = System.nanoTime();
+      try (RequestGovernor.Permit permit = governor.acquire(url)) {
+        metrics.record("http.wait", start);
+        ProxyPool.Selection selection = proxyPool.selectHttp();
+        ProxyPool.Exit exit = selection == null ? null : selection.getExit();
+        if (exit == null && !proxyPool.isEmpty()) {
+          // never bypass the configured proxies, the browser can still go through a SOCKS proxy
+          throw new IOException("no HTTP proxy configured");
+        }
+        start = System.nanoTime();
+        try {
+          result = send(client(exit), request, stopMarker, maxBytes);
+          metrics.record("http.fetch", start);
+          permit.complete(result.getStatus(), RequestGovernor.parseRetryAfter(result.getHeader("Retry-After")));
+          if (exit != null) {
+            exit.record(result.getStatus(), start);
+          }
+        }
+        catch (IOException e) {
+          permit.complete(RequestGovernor.NO_STATUS, null);
+          if (exit != null) {
+            exit.record(RequestGovernor.NO_STATUS, start);
+          }
+          error = e;
+        }
+        finally {
+          if (selection != null) {
+            selection.release();
+          }
+        }
+      }
+
+      int status = result == null ? RequestGovernor.NO_STATUS : result.getStatus();
+      String cause = error == null ? String.valueOf(status) : error.getClass().getSimpleName();
+      if (attempt >= maxRetries || !RequestGovernor.isRetryable(status)) {
+        if (error != null || !(result.isOk() || result.isNotModified())) {
+          metrics.increment("failure.http." + cause);
+        }
+        if (error != null) {
+          throw error;
+        }
+        return result;
+      }
+      metrics.increment("retry.http." + cause);
+      long delay = governor.backoffMillis(attempt);
+      logger.debug("attempt {} for {} failed ({}), retrying in {}ms", attempt + 1, url, error == null ? status : error.getMessage(), delay);
+      Thread.sleep(delay);
+    }
+  }
+
+  private void addAgeGateCookies() {
+    for (String name : AGE_GATE_COOKIE) {
+      HttpCookie cookie = new HttpCookie(name, "1");
+      cookie.setDomain("." + baseUri.getHost());
+      cookie.setPath("/");
+      cookie.setVersion(0);
+      cookieManager.getCookieStore().add(baseUri, cookie);
+    }
+  }
+
+  /**
+   * Replaces the cookies sent with every request by those of a browser session. All cookies the site set so far are dropped, as they
+   * may belong to an earlier session; only the age gate cookies are kept.
+   *
+   * @param cookies
+   *     the cookies of the session, empty to continue without one
+   */
+  public synchronized void setSessionCookies(List<HttpCookie> cookies) {
+    cookieManager.getCookieStore().removeAll();
+    addAgeGateCookies();
+    for (HttpCookie cookie : cookies) {
+      cookieManager.getCookieStore().add(baseUri, cookie);
+    }
+  }
+
+  private static Result send(HttpClient client, HttpRequest request, byte[] stopMarker, int maxBytes) throws IOException,
+      InterruptedException {
+    HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+    String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+    byte[] body = stopMarker == null && maxBytes == Integer.MAX_VALUE
+        ? decode(response.body(), encoding)
+        : decodeUntil(response.body(), encoding, stopMarker, maxBytes);
+    return new Result(response.statusCode(), response.uri().toString(), response.headers(), body);
+  }
+
+  private static byte[] decode(InputStream body, String encoding) throws IOException {
+    try (InputStream in = wrap(body, encoding)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(256 * 1024);
+      in.transferTo(out);
+      return out.toByteArray();
+    }
+  }
+
+  /**
+   * @return the body up to and including the stop marker, but no more than the given number of bytes
+   */
+  private static byte[] decodeUntil(InputStream body, String encoding, byte[] stopMarker, int maxBytes) throws IOException {
+    // closing the stream early cancels the rest of the response
+    try (InputStream in = wrap(body, encoding)) {
+      byte[] buf = new byte[Math.min(64 * 1024, maxBytes)];
+      int length = 0;
+      int searched = 0;
+      while (length < maxBytes) {
+        if (length == buf.length) {
+          buf = Arrays.copyOf(buf, (int) Math.min(buf.length * 2L, maxBytes));
+        }
+        int read = in.read(buf, length, buf.length - length);
+        if (read < 0) {
+          break;
+        }
+        length += read;
+        if (stopMarker != null) {
+          int end = indexOf(buf, Math.max(0, searched - stopMarker.length + 1), length, stopMarker);
+          if (end >= 0) {
+            return Arrays.copyOf(buf, end);
+          }
+          searched = length;
+        }
+      }
+      return Arrays.copyOf(buf, length);
+    }
+  }
+
+  /**
+   * @return the index after the first occurrence of the marker or -1
+   */
+  private static int indexOf(byte[] buf, int from, int to, byte[] marker) {
+    for (int i = from; i <= to - marker.length; i++) {
+      int j = 0;
+      while (j < marker.length && buf[i + j] == marker[j]) {
+        j++;
+      }
+      if (j == marker.length) {
+        return i + marker.length;
+      }
+    }
+    return -1;
+  }
+
+  private static InputStream wrap(InputStream body, String encoding) throws IOException {
+    switch (encoding.trim().toLowerCase()) {
+      case "gzip":
+        return new GZIPInputStream(body, 16 * 1024);
+      case "deflate":
+        return new InflaterInputStream(body);
+      default:
+        return body;
+    }
+  }
+
+  /**
+   * A fetched page. The body is kept as the raw (decompressed) bytes, it is only turned into a String if {@link #getBody()} is called.
+   */
+  public static class Result {
+    private final int         status;
+    private final String      url;
+    private final HttpHeaders headers;
+    private final byte[]      body;
+
+    public Result(int status, String url, HttpHeaders headers, byte[] body) {
+      this.status = status;
+      this.url = url;
+      this.headers = headers == null ? HttpHeaders.of(Collections.emptyMap(), (name, value) -> true) : headers;
+      this.body = body;
+    }
+
+    public int getStatus() {
+      return status;
+    }
+
+    public String getUrl() {
+      return url;
+    }
+
+    /**
+     * @return the first value of the response header or null
+     */
+    public String getHeader(String name) {
+      return headers.firstValue(name).orElse(null);
+    }
+
+    public byte[] getBodyBytes() {
+      return body;
+    }
+
+    public String getBody() {
+      return new String(body, StandardCharsets.UTF_8);
+    }
+
+    public boolean isOk() {
+      return status >= 200 && status < 300;
+    }
+
+    public boolean isNotModified() {
+      return status == 304;
+    }
+  }
+}
@@ -0,0 +1,364 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.http;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tinymediamanager.scraper.http.ProxySettings;
+import xyz.ifnotnull.tmm.scraper.pornhub.metrics.ScraperMetrics;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * The proxies the requests are spread over. Every exit tracks its requests in flight, a moving average of its latency and its
+ * consecutive failures. A request goes to the available exit with the shortest expected wait: its latency times its load, divided by
+ * its weight.
+ * <p>
+ * A run of failures opens the circuit of an exit, it gets no requests until its cooldown is over. Then a single trial request decides:
+ * a success closes the circuit again, a failure keeps it open for twice as long. Only if all exits are open the one which closes first
+ * is used, a scrape is never refused because of its proxies.
+ * <p>
+ * Entries are written as {@code [scheme://][user:password@]host:port[*weight]}, separated by commas or whitespace. Without entries the
+ * proxy of tinyMediaManager is used if one is set, otherwise the pool is empty and requests go out directly.
+ */
+public class ProxyPool {
+  private static final Logger logger                = LoggerFactory.getLogger(ProxyPool.class);
+  private static final int    FAILURE_THRESHOLD     = 3;
+  private static final long   BASE_COOLDOWN_NANOS   = TimeUnit.SECONDS.toNanos(30);
+  private static final long   MAX_COOLDOWN_NANOS    = TimeUnit.MINUTES.toNanos(10);
+  private static final long   INITIAL_LATENCY_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final double LATENCY_SMOOTHING     = 0.2;
+
+  private final    ScraperMetrics metrics;
+  private volatile List<Exit>     exits = Collections.emptyList();
+  private          String         configured;
+
+  public ProxyPool(ScraperMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * @return a pool of the proxy of tinyMediaManager, empty if none is set
+   */
+  public static ProxyPool ofGlobalSettings(ScraperMetrics metrics) {
+    ProxyPool pool = new ProxyPool(metrics);
+    pool.configure(null);
+    return pool;
+  }
+
+  /**
+   * Replaces the exits of the pool. Exits which are configured again keep their statistics and circuit state.
+   *
+   * @param proxyList
+   *     the configured entries, blank for the proxy of tinyMediaManager
+   */
+  public synchronized void configure(String proxyList) {
+    String global = StringUtils.isBlank(ProxySettings.INSTANCE.getHost()) ? ""
+        : ProxySettings.INSTANCE.getHost() + ":" + ProxySettings.INSTANCE.getPort();
+    String entries = StringUtils.isBlank(proxyList) ? global : proxyList;
+    if (entries.equals(configured)) {
+      return;
+    }
+    configured = entries;
+
+    Map<Exit, Exit> known = new LinkedHashMap<>();
+    exits.forEach(exit -> known.put(exit, exit));
+    List<Exit> configuredExits = new ArrayList<>();
+    for (String entry : StringUtils.split(entries, ", \t\r\n")) {
+      Exit exit = parse(entry);
+      if (exit == null) {
+        logger.warn("ignoring invalid proxy '{}'", entry);
+        continue;
+      }
+      if (exit.username == null && StringUtils.isBlank(proxyList)) {
+        exit = new Exit(exit.server, ProxySettings.INSTANCE.getUsername(), ProxySettings.INSTANCE.getPassword(), exit.weight);
+      }
+      Exit existing = known.get(exit);
+      configuredExits.add(existing != null && existing.weight == exit.weight ? existing : exit);
+    }
+    exits = Collections.unmodifiableList(configuredExits);
+    logger.debug("using {} prox{}", configuredExits.size(), configuredExits.size() == 1 ? "y" : "ies");
+    if (!configuredExits.isEmpty() && !hasHttp()) {
+      logger.warn("no HTTP proxy among the configured ones, pages are only loaded with the browser");
+    }
+  }
+
+  private Exit parse(String entry) {
+    int weight = 1;
+    int star = entry.lastIndexOf('*');
+    if (star > 0) {
+      try {
+        weight = Integer.parseInt(entry.substring(star + 1));
+      }
+      catch (NumberFormatException e) {
+        return null;
+      }
+      entry = entry.substring(0, star);
+    }
+    try {
+      URI uri = URI.create(entry.contains("://") ? entry : "http://" + entry);
+      if (uri.getHost() == null || uri.getPort() <= 0 || weight <= 0) {
+        return null;
+      }
+      String username = null;
+      String password = null;
+      if (uri.getUserInfo() != null) {
+        username = StringUtils.substringBefore(uri.getUserInfo(), ":");
+        password = uri.getUserInfo().contains(":") ? StringUtils.substringAfter(uri.getUserInfo(), ":") : null;
+      }
+      return new Exit(uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort(), username, password, weight);
+    }
+    catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return true if requests go out directly
+   */
+  public boolean isEmpty() {
+    return exits.isEmpty();
+  }
+
+  /**
+   * @return true if requests can go out with the {@link java.net.http.HttpClient}: directly or through at least one HTTP proxy
+   */
+  public boolean hasHttp() {
+    List<Exit> current = exits;
+    return current.isEmpty() || current.stream().anyMatch(Exit::isHttp);
+  }
+
+  /**
+   * @return the configured exits, a new list after every change of the configuration
+   */
+  public List<Exit> getExits() {
+    return exits;
+  }
+
+  /**
+   * Picks the exit for the next request or browser context and counts it as in flight.
+   *
+   * @return the selected exit, must be {@link Selection#release() released} after use; null if the pool is empty
+   */
+  public Selection select() {
+    return select(exit -> true);
+  }
+
+  /**
+   * Like {@link #select()}, but only HTTP proxies are considered: the {@link java.net.http.HttpClient} does not speak SOCKS.
+   *
+   * @return the selected exit or null if the pool has no HTTP proxy
+   */
+  public Selection selectHttp() {
+    return select(Exit::isHttp);
+  }
+
+  private Selection select(Predicate<Exit> eligible) {
+    long now = System.nanoTime();
+    Exit best = null;
+    double bestScore = Double.MAX_VALUE;
+    Exit closingFirst = null;
+    for (Exit exit : exits) {
+      if (!eligible.test(exit)) {
+        continue;
+      }
+      if (exit.isAvailable(now)) {
+        double score = exit.score();
+        if (score < bestScore) {
+          best = exit;
+          bestScore = score;
+        }
+      }
+      else if (closingFirst == null || exit.openUntil() - closingFirst.openUntil() < 0) {
+        closingFirst = exit;
+      }
+    }
+    if (best == null && closingFirst != null) {
+      metrics.increment("proxy.allOpen");
+      best = closingFirst;
+    }
+    return best == null ? null : new Selection(best, best.acquire(now));
+  }
+
+  /**
+   * One use of an exit, from its selection to its release. It remembers whether it took the trial of an open circuit, so that only its
+   * own release can let another trial through.
+   */
+  public static final class Selection {
+    private final Exit exit;
+    private final long trial;
+
+    private Selection(Exit exit, long trial) {
+      this.exit = exit;
+      this.trial = trial;
+    }
+
+    public Exit getExit() {
+      return exit;
+    }
+
+    /**
+     * Ends the use of the exit, once per selection.
+     */
+    public void release() {
+      exit.release(trial);
+    }
+  }
+
+  /**
+   * A proxy server of the pool together with its statistics.
+   */
+  public final class Exit {
+    private final String  server;
+    private final String  username;
+    private final String  password;
+    private final int     weight;
+    // guarded by this
+    private       int     inFlight;
+    private       double  latencyNanos = INITIAL_LATENCY_NANOS;
+    private       int     failures;
+    private       boolean open;
+    private       long    openUntil;
+    private       long    cooldownNanos;
+    // the selection which holds the trial of the open circuit, 0 if none does
+    private       long    trial;
+    private       long    trials;
+
+    private Exit(String server, String username, String password, int weight) {
+      this.server = server;
+      this.username = username;
+      this.password = password;
+      this.weight = weight;
+    }
+
+    /**
+     * @return the server as {@code scheme://host:port}
+     */
+    public String getServer() {
+      return server;
+    }
+
+    /**
+     * @return the user name for the proxy or null
+     */
+    public String getUsername() {
+      return username;
+    }
+
+    /**
+     * @return the password for the proxy or null
+     */
+    public String getPassword() {
+      return password;
+    }
+
+    public boolean isHttp() {
+      return server.startsWith("http://") || server.startsWith("https://");
+    }
+
+    private synchronized boolean isAvailable(long now) {
+      // an open circuit lets a single trial request through once its cooldown is over
+      return !open || (now - openUntil >= 0 && trial == 0);
+    }
+
+    private synchronized long openUntil() {
+      return openUntil;
+    }
+
+    private synchronized double score() {
+      return latencyNanos * (inFlight + 1) / weight;
+    }
+
+    /**
+     * @return the trial the selection holds, 0 if it holds none
+     */
+    private synchronized long acquire(long now) {
+      inFlight++;
+      if (open && now - openUntil >= 0 && trial == 0) {
+        trial = ++trials;
+        return trial;
+      }
+      return 0;
+    }
+
+    private synchronized void release(long heldTrial) {
+      inFlight = Math.max(0, inFlight - 1);
+      // a trial which never got to a request, the next selection may try again; other selections leave it alone
+      if (heldTrial != 0 && heldTrial == trial) {
+        trial = 0;
+      }
+    }
+
+    /**
+     * Feeds back the outcome of a request through this exit. Throttling, server errors, refused proxy authentication and requests without
+     * a response count as failures of the exit.
+     *
+     * @param status
+     *     the response status or {@link RequestGovernor#NO_STATUS}
+     * @param startNanos
+     *     the {@link System#nanoTime()} the request was sent at
+     */
+    public void record(int status, long startNanos) {
+      boolean failed = status == RequestGovernor.NO_STATUS || status == 403 || status == 407 || RequestGovernor.isRetryable(status);
+      long latency = System.nanoTime() - startNanos;
+      boolean opened = false;
+      boolean closed = false;
+      synchronized (this) {
+        if (!failed) {
+          latencyNanos += LATENCY_SMOOTHING * (latency - latencyNanos);
+          failures = 0;
+          closed = open;
+          open = false;
+          cooldownNanos = 0;
+          trial = 0;
+        }
+        else if (trial != 0 || (!open && ++failures >= FAILURE_THRESHOLD)) {
+          // failures of requests sent before the circuit opened do not extend the cooldown, only a failed trial does
+          cooldownNanos = cooldownNanos == 0 ? BASE_COOLDOWN_NANOS : Math.min(MAX_COOLDOWN_NANOS, cooldownNanos * 2);
+          openUntil = System.nanoTime() + cooldownNanos;
+          open = true;
+          opened = true;
+          trial = 0;
+        }
+      }
+      metrics.increment(failed ? "proxy.failure" : "proxy.success");
+      if (opened) {
+        metrics.increment("proxy.open");
+        logger.info("proxy {} failed {} times, skipping it for {}s", server, failures, TimeUnit.NANOSECONDS.toSeconds(cooldownNanos));
+      }
+      if (closed) {
+        metrics.increment("proxy.closed");
+        logger.info("proxy {} works again", server);
+      }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Exit)) {
+        return false;
+      }
+      Exit exit = (Exit) o;
+      return server.equals(exit.server) && Objects.equals(username, exit.username) && Objects.equals(password, exit.password);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(server, username, password);
+    }
+
+    @Override
+    public String toString() {
+      return server;
+    }
+  }
+}
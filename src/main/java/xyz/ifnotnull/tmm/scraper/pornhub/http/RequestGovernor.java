@@ -0,0 +1,245 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.http;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces the requests to every host. Each host gets a token bucket which caps the request rate and an AIMD (additive increase,
+ * multiplicative decrease) limit on the requests in flight: every successful response raises the limit a little, a 429 or 503 halves it
+ * and a {@code Retry-After} header pauses the host. The limit so settles at the highest concurrency the site tolerates.
+ */
+public class RequestGovernor {
+  /** status to report for requests which did not get a response */
+  public static final int NO_STATUS = -1;
+
+  private static final long BACKOFF_BASE_MILLIS = 500;
+  private static final long BACKOFF_MAX_MILLIS  = 30_000;
+  private static final long DECREASE_GAP_NANOS  = TimeUnit.SECONDS.toNanos(1);
+
+  private volatile double              ratePerSecond;
+  private volatile double              burst;
+  private final int                    initialConcurrency;
+  private final int                    maxConcurrency;
+  private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+
+  /**
+   * @param ratePerSecond
+   *     the maximum number of requests per second and host, also the burst size (at least one)
+   * @param initialConcurrency
+   *     the number of parallel requests a host starts with
+   * @param maxConcurrency
+   *     the upper bound for the parallel requests of a host
+   */
+  public RequestGovernor(double ratePerSecond, int initialConcurrency, int maxConcurrency) {
+    setRatePerSecond(ratePerSecond);
+    this.maxConcurrency = Math.max(1, maxConcurrency);
+    this.initialConcurrency = Math.min(this.maxConcurrency, Math.max(1, initialConcurrency));
+  }
+
+  /**
+   * @param ratePerSecond
+   *     the new maximum number of requests per second and host, applies to the next request
+   */
+  public void setRatePerSecond(double ratePerSecond) {
+    this.ratePerSecond = Math.max(0.1, ratePerSecond);
+    this.burst = Math.max(1, this.ratePerSecond);
+  }
+
+  /**
+   * Waits until the host of the url may receive another request.
+   *
+   * @param url
+   *     the url which is going to be requested
+   * @return the permit, must be closed once the response arrived
+   * @throws InterruptedException
+   *     the calling thread was interrupted while waiting
+   */
+  public Permit acquire(String url) throws InterruptedException {
+    HostState host = host(url);
+    host.acquire();
+    return new Permit(host);
+  }
+
+  /**
+   * Feeds back the response of a request which was not sent through a permit, like the sub-resources of a browser page.
+   *
+   * @param url
+   *     the requested url
+   * @param status
+   *     the response status
+   * @param retryAfter
+   *     the value of the {@code Retry-After} header, may be null
+   */
+  public void onResponse(String url, int status, String retryAfter) {
+    if (isThrottled(status)) {
+      host(url).onResponse(status, parseRetryAfter(retryAfter));
+    }
+  }
+
+  /**
+   * @param attempt
+   *     the zero based number of the failed attempt
+   * @return a random delay before the next attempt, the upper bound doubles with every attempt
+   */
+  public long backoffMillis(int attempt) {
+    long max = Math.min(BACKOFF_MAX_MILLIS, BACKOFF_BASE_MILLIS << Math.min(attempt, 16));
+    return ThreadLocalRandom.current().nextLong(max / 2, max + 1);
+  }
+
+  /**
+   * @return true if the status tells us to slow down
+   */
+  public static boolean isThrottled(int status) {
+    return status == 429 || status == 503;
+  }
+
+  /**
+   * @return true if a request with this outcome is worth another attempt
+   */
+  public static boolean isRetryable(int status) {
+    return status == NO_STATUS || isThrottled(status) || status == 502 || status == 504;
+  }
+
+  /**
+   * @param value
+   *     a {@code Retry-After} header in delta seconds or as HTTP date
+   * @return the time to wait or null if the header is missing or invalid
+   */
+  public static Duration parseRetryAfter(String value) {
+    if (StringUtils.isBlank(value)) {
+      return null;
+    }
+    value = value.trim();
+    if (StringUtils.isNumeric(value)) {
+      return value.length() > 9 ? null : Duration.ofSeconds(Long.parseLong(value));
+    }
+    try {
+      Duration duration = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME));
+      return duration.isNegative() ? Duration.ZERO : duration;
+    }
+    catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  private HostState host(String url) {
+    String host;
+    try {
+      host = URI.create(url).getHost();
+    }
+    catch (IllegalArgumentException e) {
+      host = null;
+    }
+    return hosts.computeIfAbsent(host == null ? "" : host.toLowerCase(Locale.ROOT), h -> new HostState());
+  }
+
+  /**
+   * The right to send one request. Report the outcome with {@link #complete(int, Duration)}, closing an uncompleted permit frees the
+   * slot without adjusting the limit.
+   */
+  public static final class Permit implements AutoCloseable {
+    private final HostState host;
+    private       boolean   released;
+
+    private Permit(HostState host) {
+      this.host = host;
+    }
+
+    /**
+     * @param status
+     *     the response status or {@link #NO_STATUS}
+     * @param retryAfter
+     *     the parsed {@code Retry-After} header, may be null
+     */
+    public void complete(int status, Duration retryAfter) {
+      if (!released) {
+        released = true;
+        host.release();
+        host.onResponse(status, retryAfter);
+      }
+    }
+
+    @Override
+    public void close() {
+      if (!released) {
+        released = true;
+        host.release();
+      }
+    }
+  }
+
+  private final class HostState {
+    private double tokens      = burst;
+    private long   refilledAt  = System.nanoTime();
+    private double limit       = initialConcurrency;
+    private int    inFlight;
+    // nanoTime has an arbitrary origin, "not paused" has to be a time of this run
+    private long   pausedUntil = System.nanoTime();
+    private long   decreasedAt = System.nanoTime() - DECREASE_GAP_NANOS;
+
+    private synchronized void acquire() throws InterruptedException {
+      while (true) {
+        long now = System.nanoTime();
+        refill(now);
+        long waitNanos;
+        if (pausedUntil - now > 0) {
+          waitNanos = pausedUntil - now;
+        }
+        else if (inFlight >= (int) limit) {
+          // woken up by release()
+          waitNanos = TimeUnit.SECONDS.toNanos(1);
+        }
+        else if (tokens < 1) {
+          waitNanos = (long) ((1 - tokens) / ratePerSecond * TimeUnit.SECONDS.toNanos(1));
+        }
+        else {
+          tokens--;
+          inFlight++;
+          return;
+        }
+        TimeUnit.NANOSECONDS.timedWait(this, Math.max(waitNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+      }
+    }
+
+    private void refill(long now) {
+      tokens = Math.min(burst, tokens + (now - refilledAt) / (double) TimeUnit.SECONDS.toNanos(1) * ratePerSecond);
+      refilledAt = now;
+    }
+
+    private synchronized void release() {
+      inFlight--;
+      notifyAll();
+    }
+
+    private synchronized void onResponse(int status, Duration retryAfter) {
+      long now = System.nanoTime();
+      if (isThrottled(status)) {
+        // responses to requests sent before the last decrease do not count again
+        if (now - decreasedAt >= DECREASE_GAP_NANOS) {
+          limit = Math.max(1, limit / 2);
+          decreasedAt = now;
+        }
+        if (retryAfter != null) {
+          long until = now + Math.min(retryAfter.toNanos(), TimeUnit.MINUTES.toNanos(10));
+          if (until - pausedUntil > 0) {
+            pausedUntil = until;
+          }
+        }
+      }
+      else if (status >= 200 && status < 400) {
+        limit = Math.min(maxConcurrency, limit + 1 / limit);
+      }
+      notifyAll();
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress of one batch of videos. Every video ends up as scraped, skipped (known from the journal or the cache) or failed; the
+ * progress is logged every twentieth of the batch with the rate and the estimated time until the rest is done. Skipped videos cost
+ * nothing, so they are not part of the rate.
+ */
+public class BatchProgress {
+  private static final Logger logger = LoggerFactory.getLogger(BatchProgress.class);
+
+  private final int  total;
+  private final int  logEvery;
+  private final long startNanos = System.nanoTime();
+  private       int  scraped;
+  private       int  skipped;
+  private       int  failed;
+
+  /**
+   * @param total
+   *     the number of videos in the batch
+   */
+  public BatchProgress(int total) {
+    this.total = total;
+    this.logEvery = Math.max(1, total / 20);
+  }
+
+  public void scraped() {
+    count(1, 0, 0);
+  }
+
+  public void skipped() {
+    count(0, 1, 0);
+  }
+
+  public void failed() {
+    count(0, 0, 1);
+  }
+
+  private void count(int scraped, int skipped, int failed) {
+    String line;
+    synchronized (this) {
+      this.scraped += scraped;
+      this.skipped += skipped;
+      this.failed += failed;
+      int done = this.scraped + this.skipped + this.failed;
+      if (done % logEvery != 0 && done != total) {
+        return;
+      }
+      line = toString();
+    }
+    logger.info(line);
+  }
+
+  /**
+   * @return the estimated milliseconds until the whole batch is done, -1 if nothing has been fetched yet
+   */
+  public synchronized long getEtaMillis() {
+    int fetched = scraped + failed;
+    int remaining = total - fetched - skipped;
+    if (remaining <= 0) {
+      return 0;
+    }
+    if (fetched == 0) {
+      return -1;
+    }
+    return TimeUnit.NANOSECONDS.toMillis((System.nanoTime() - startNanos) / fetched * remaining);
+  }
+
+  @Override
+  public synchronized String toString() {
+    double minutes = (System.nanoTime() - startNanos) / (double) TimeUnit.MINUTES.toNanos(1);
+    long eta = getEtaMillis();
+    return String.format("batch: %d/%d done (%d scraped, %d skipped, %d failed), %.1f videos/min, %s", scraped + skipped + failed, total,
+        scraped, skipped, failed, minutes > 0 ? (scraped + failed) / minutes : 0,
+        eta < 0 ? "no estimate yet" : eta == 0 ? "finished" : "about " + TimeUnit.MILLISECONDS.toMinutes(eta + 59_999) + " min left");
+  }
+}
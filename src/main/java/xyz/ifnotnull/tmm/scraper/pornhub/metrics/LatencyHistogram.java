@@ -0,0 +1,112 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.metrics;
+
+import java.beans.ConstructorProperties;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free latency histogram with power of two microsecond buckets. Percentiles are reported as the upper bound of their bucket, which
+ * is precise enough to tell a 50ms phase from a 2s one.
+ */
+public class LatencyHistogram {
+  private static final int BUCKETS = 40;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final LongAdder       count   = new LongAdder();
+  private final LongAdder       sum     = new LongAdder();
+  private final LongAccumulator max     = new LongAccumulator(Math::max, 0);
+
+  /**
+   * @param nanos
+   *     the measured duration
+   */
+  public void record(long nanos) {
+    long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+    buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+    count.increment();
+    sum.add(micros);
+    max.accumulate(micros);
+  }
+
+  public Snapshot snapshot() {
+    long[] counts = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+      total += counts[i];
+    }
+    long sumMicros = sum.sum();
+    return new Snapshot(total, total == 0 ? 0 : sumMicros / 1000.0 / total, percentile(counts, total, 0.5),
+        percentile(counts, total, 0.9), percentile(counts, total, 0.99), max.get() / 1000.0);
+  }
+
+  private static double percentile(long[] counts, long total, double quantile) {
+    if (total == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(total * quantile);
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        // bucket i holds durations below 2^i microseconds
+        return (1L << i) / 1000.0;
+      }
+    }
+    return (1L << (counts.length - 1)) / 1000.0;
+  }
+
+  /**
+   * The state of a histogram at one point in time, all durations are in milliseconds.
+   */
+  public static class Snapshot {
+    private final long   count;
+    private final double mean;
+    private final double p50;
+    private final double p90;
+    private final double p99;
+    private final double max;
+
+    @ConstructorProperties({ "count", "mean", "p50", "p90", "p99", "max" })
+    public Snapshot(long count, double mean, double p50, double p90, double p99, double max) {
+      this.count = count;
+      this.mean = mean;
+      this.p50 = p50;
+      this.p90 = p90;
+      this.p99 = p99;
+      this.max = max;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public double getMean() {
+      return mean;
+    }
+
+    public double getP50() {
+      return p50;
+    }
+
+    public double getP90() {
+      return p90;
+    }
+
+    public double getP99() {
+      return p99;
+    }
+
+    public double getMax() {
+      return max;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT, "n=%d mean=%.1fms p50<%.1fms p90<%.1fms p99<%.1fms max=%.1fms", count, mean, p50, p90, p99, max);
+    }
+  }
+}
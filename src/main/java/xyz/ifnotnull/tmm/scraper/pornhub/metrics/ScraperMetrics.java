@@ -0,0 +1,158 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xyz.ifnotnull.tmm.scraper.pornhub.util.DaemonThreadFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timers and counters for every phase of a scrape. Phases are timed with
+ * <pre>
+ * long start = System.nanoTime();
+ * ...
+ * metrics.record("page.navigate", start);
+ * </pre>
+ * The values are published as JMX bean and, if an interval is set, logged as one summary line.
+ */
+public class ScraperMetrics implements ScraperMetricsMXBean, AutoCloseable {
+  public static final String CACHE_HIT    = "cache.hit";
+  public static final String CACHE_MISS   = "cache.miss";
+  public static final String PREFETCH_HIT = "prefetch.hit";
+
+  private static final Logger logger      = LoggerFactory.getLogger(ScraperMetrics.class);
+  private static final String DOMAIN      = "xyz.ifnotnull.tmm.scraper.pornhub";
+
+  private final Map<String, LatencyHistogram> phases   = new ConcurrentHashMap<>();
+  private final Map<String, LongAdder>        counters = new ConcurrentHashMap<>();
+  private       ScheduledExecutorService      reporter;
+  private       ObjectName                    objectName;
+  private       long                          lastReported;
+
+  /**
+   * @param phase
+   *     the name of the phase
+   * @param startNanos
+   *     the {@link System#nanoTime()} at the start of the phase
+   */
+  public void record(String phase, long startNanos) {
+    phases.computeIfAbsent(phase, p -> new LatencyHistogram()).record(System.nanoTime() - startNanos);
+  }
+
+  public void increment(String counter) {
+    counters.computeIfAbsent(counter, c -> new LongAdder()).increment();
+  }
+
+  /**
+   * Registers the JMX bean, replacing the bean an earlier instance of the same component registered under the type.
+   *
+   * @param type
+   *     the {@code type=} key of the bean, one per component so the metrics of the others stay registered
+   */
+  public synchronized void register(String type) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(DOMAIN, "type", type);
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+      server.registerMBean(this, name);
+      objectName = name;
+    }
+    catch (JMException | SecurityException e) {
+      logger.debug("could not register the scraper metrics: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Logs a summary line at the given interval, as long as there was any activity since the last one.
+   *
+   * @param intervalSeconds
+   *     the interval, 0 disables the summary
+   */
+  public synchronized void startReporting(long intervalSeconds) {
+    if (intervalSeconds <= 0 || reporter != null) {
+      return;
+    }
+    reporter = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("pornhub-metrics"));
+    reporter.scheduleWithFixedDelay(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+  }
+
+  private void report() {
+    long activity = counters.values().stream().mapToLong(LongAdder::sum).sum() + phases.values()
+        .stream()
+        .mapToLong(histogram -> histogram.snapshot().getCount())
+        .sum();
+    if (activity != lastReported) {
+      lastReported = activity;
+      logger.info(getSummary());
+    }
+  }
+
+  @Override
+  public Map<String, LatencyHistogram.Snapshot> getPhases() {
+    Map<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<>();
+    phases.forEach((phase, histogram) -> snapshots.put(phase, histogram.snapshot()));
+    return snapshots;
+  }
+
+  @Override
+  public Map<String, Long> getCounters() {
+    Map<String, Long> values = new TreeMap<>();
+    counters.forEach((counter, adder) -> values.put(counter, adder.sum()));
+    return values;
+  }
+
+  @Override
+  public double getCacheHitRatio() {
+    long hits = count(CACHE_HIT) + count(PREFETCH_HIT);
+    long total = hits + count(CACHE_MISS);
+    return total == 0 ? 0 : hits / (double) total;
+  }
+
+  private long count(String counter) {
+    LongAdder adder = counters.get(counter);
+    return adder == null ? 0 : adder.sum();
+  }
+
+  @Override
+  public String getSummary() {
+    StringBuilder sb = new StringBuilder("scraper metrics: cache hit ratio ").append(Math.round(getCacheHitRatio() * 100)).append('%');
+    getPhases().forEach((phase, snapshot) -> sb.append("; ").append(phase).append(' ').append(snapshot));
+    getCounters().forEach((counter, value) -> sb.append("; ").append(counter).append('=').append(value));
+    return sb.toString();
+  }
+
+  @Override
+  public void reset() {
+    phases.clear();
+    counters.clear();
+  }
+
+  @Override
+  public synchronized void close() {
+    if (reporter != null) {
+      reporter.shutdownNow();
+      reporter = null;
+    }
+    if (objectName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+      }
+      catch (JMException e) {
+        logger.debug("could not unregister the scraper metrics: {}", e.getMessage());
+      }
+      objectName = null;
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link ScraperMetrics}, registered as {@code xyz.ifnotnull.tmm.scraper.pornhub:type=ScraperMetrics} by the metadata
+ * provider, {@code type=ArtworkMetrics} by the artwork provider and {@code type=ImageServerMetrics} by the local image server.
+ */
+public interface ScraperMetricsMXBean {
+
+  /**
+   * @return the latency of every scrape phase in milliseconds
+   */
+  Map<String, LatencyHistogram.Snapshot> getPhases();
+
+  /**
+   * @return all counters: cache hits and misses, retries and failures by cause
+   */
+  Map<String, Long> getCounters();
+
+  /**
+   * @return the share of metadata requests answered from the cache or a prefetch, between 0 and 1
+   */
+  double getCacheHitRatio();
+
+  /**
+   * @return the same one line summary which is written to the log
+   */
+  String getSummary();
+
+  /**
+   * Starts all timers and counters from zero.
+   */
+  void reset();
+}
@@ -0,0 +1,122 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.parser;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Single pass entity decoding for the few fields the scraper reads. Knows the XML entities, {@code &nbsp;}, numeric references and the
+ * {@code &period;}/{@code &comma;} entities the site uses in descriptions, everything else is kept as it is.
+ */
+public final class HtmlEntities {
+
+  private HtmlEntities() {
+  }
+
+  /**
+   * Decodes a range of UTF-8 bytes. Ranges without any {@code &} are copied once, without going through a builder.
+   *
+   * @param buf
+   *     the page bytes
+   * @param from
+   *     the first byte, inclusive
+   * @param to
+   *     the last byte, exclusive
+   * @return the decoded text
+   */
+  public static String decode(byte[] buf, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (buf[i] == '&') {
+        return unescape(new String(buf, from, to - from, StandardCharsets.UTF_8), false);
+      }
+    }
+    return new String(buf, from, to - from, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @param text
+   *     the text to decode
+   * @param descriptionRules
+   *     descriptions are escaped twice for {@code &period;} and {@code &comma;}, so {@code &amp;period;} becomes a period as well
+   * @return the decoded text, the same instance if there was nothing to decode
+   */
+  public static String unescape(String text, boolean descriptionRules) {
+    if (text == null) {
+      return null;
+    }
+    int amp = text.indexOf('&');
+    if (amp < 0) {
+      return text;
+    }
+
+    StringBuilder sb = new StringBuilder(text.length());
+    sb.append(text, 0, amp);
+    int i = amp;
+    while (i < text.length()) {
+      char c = text.charAt(i);
+      if (c != '&') {
+        sb.append(c);
+        i++;
+        continue;
+      }
+      int semicolon = text.indexOf(';', i + 1);
+      if (semicolon < 0 || semicolon - i > 10) {
+        sb.append(c);
+        i++;
+        continue;
+      }
+      String name = text.substring(i + 1, semicolon);
+      int codePoint = resolve(name);
+      if (codePoint < 0) {
+        sb.append(c);
+        i++;
+        continue;
+      }
+      i = semicolon + 1;
+      if (codePoint == '&' && descriptionRules) {
+        if (text.startsWith("period;", i)) {
+          codePoint = '.';
+          i += 7;
+        }
+        else if (text.startsWith("comma;", i)) {
+          codePoint = ',';
+          i += 6;
+        }
+      }
+      sb.appendCodePoint(codePoint);
+    }
+    return sb.toString();
+  }
+
+  private static int resolve(String name) {
+    switch (name) {
+      case "amp":
+        return '&';
+      case "lt":
+        return '<';
+      case "gt":
+        return '>';
+      case "quot":
+        return '"';
+      case "apos":
+        return '\'';
+      case "nbsp":
+        return ' ';
+      case "period":
+        return '.';
+      case "comma":
+        return ',';
+      default:
+        break;
+    }
+    if (name.length() < 2 || name.charAt(0) != '#') {
+      return -1;
+    }
+    try {
+      int codePoint = name.charAt(1) == 'x' || name.charAt(1) == 'X' ? Integer.parseInt(name.substring(2), 16) : Integer.parseInt(
+          name.substring(1));
+      return Character.isValidCodePoint(codePoint) ? codePoint : -1;
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
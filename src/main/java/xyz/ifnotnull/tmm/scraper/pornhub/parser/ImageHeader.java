@@ -0,0 +1,131 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.parser;
+
+/**
+ * The format and dimensions of an image, read from its first bytes without decoding it. Knows JPEG, PNG, GIF and WebP, which covers
+ * everything the site serves as artwork.
+ */
+public final class ImageHeader {
+  private final String format;
+  private final int    width;
+  private final int    height;
+
+  private ImageHeader(String format, int width, int height) {
+    this.format = format;
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * @param data
+   *     the first bytes of the image, a JPEG needs everything up to its frame header
+   * @return the header or null if the format is unknown or the dimensions are not within the given bytes
+   */
+  public static ImageHeader read(byte[] data) {
+    if (data == null || data.length < 12) {
+      return null;
+    }
+    if (u8(data, 0) == 0xFF && u8(data, 1) == 0xD8) {
+      return jpeg(data);
+    }
+    if (u8(data, 0) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G' && data.length >= 24) {
+      // the IHDR chunk is always first
+      return of("png", u32(data, 16), u32(data, 20));
+    }
+    if (data[0] == 'G' && data[1] == 'I' && data[2] == 'F') {
+      return of("gif", u16le(data, 6), u16le(data, 8));
+    }
+    if (data[0] == 'R' && data[1] == 'I' && data[2] == 'F' && data[3] == 'F' && data[8] == 'W' && data[9] == 'E' && data[10] == 'B'
+        && data[11] == 'P') {
+      return webp(data);
+    }
+    return null;
+  }
+
+  private static ImageHeader jpeg(byte[] data) {
+    int i = 2;
+    while (i + 3 < data.length) {
+      if (u8(data, i) != 0xFF) {
+        return null;
+      }
+      int marker = u8(data, i + 1);
+      if (marker == 0xFF) {
+        // fill byte
+        i++;
+        continue;
+      }
+      if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) {
+        // markers without a segment
+        i += 2;
+        continue;
+      }
+      // all start of frame markers but DHT, JPG and DAC
+      if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+        return i + 8 < data.length ? of("jpeg", u16(data, i + 7), u16(data, i + 5)) : null;
+      }
+      if (marker == 0xDA || marker == 0xD9) {
+        // the image data starts without a frame header
+        return null;
+      }
+      i += 2 + u16(data, i + 2);
+    }
+    return null;
+  }
+
+  private static ImageHeader webp(byte[] data) {
+    if (data.length < 30) {
+      return null;
+    }
+    if (data[12] == 'V' && data[13] == 'P' && data[14] == '8' && data[15] == ' ') {
+      return of("webp", u16le(data, 26) & 0x3FFF, u16le(data, 28) & 0x3FFF);
+    }
+    if (data[12] == 'V' && data[13] == 'P' && data[14] == '8' && data[15] == 'L') {
+      int b1 = u8(data, 22);
+      int b2 = u8(data, 23);
+      int b3 = u8(data, 24);
+      return of("webp", 1 + (((b1 & 0x3F) << 8) | u8(data, 21)), 1 + (((b3 & 0x0F) << 10) | (b2 << 2) | ((b1 & 0xC0) >> 6)));
+    }
+    if (data[12] == 'V' && data[13] == 'P' && data[14] == '8' && data[15] == 'X') {
+      return of("webp", 1 + u24le(data, 24), 1 + u24le(data, 27));
+    }
+    return null;
+  }
+
+  private static ImageHeader of(String format, int width, int height) {
+    return width > 0 && height > 0 ? new ImageHeader(format, width, height) : null;
+  }
+
+  private static int u8(byte[] data, int i) {
+    return data[i] & 0xFF;
+  }
+
+  private static int u16(byte[] data, int i) {
+    return u8(data, i) << 8 | u8(data, i + 1);
+  }
+
+  private static int u16le(byte[] data, int i) {
+    return u8(data, i) | u8(data, i + 1) << 8;
+  }
+
+  private static int u24le(byte[] data, int i) {
+    return u16le(data, i) | u8(data, i + 2) << 16;
+  }
+
+  private static int u32(byte[] data, int i) {
+    return u16(data, i) << 16 | u16(data, i + 2);
+  }
+
+  /**
+   * @return jpeg, png, gif or webp
+   */
+  public String getFormat() {
+    return format;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+}
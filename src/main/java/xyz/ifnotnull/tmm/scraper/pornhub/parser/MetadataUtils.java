@@ -0,0 +1,189 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.parser;
+
+import org.apache.commons.lang3.StringUtils;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.LdJson;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The string work of mapping a {@link xyz.ifnotnull.tmm.scraper.pornhub.dto.VideoPage} to metadata. Kept free of tinyMediaManager
+ * types, so that the benchmarks can run it without a scraper instance.
+ */
+public final class MetadataUtils {
+  /** the default of the "ID Matcher" option, matches file names like {@code ph5f1c2a3b4c5d6 | some title.mp4} */
+  public static final String DEFAULT_ID_MATCHER = "^(\\w+?)\\s*[|!@].*";
+
+  private static final Pattern ADD_DATE_REGEX          = Pattern.compile("^(\\d+)\\s*(\\S+)\\s*(?:ago|前)$");
+  private static final Pattern THUMB_URL_INDEX_PATTERN = Pattern.compile("\\{(\\d+)}");
+  // https://ei.phncdn.com/videos/202211/06/418983331/original/(m=qZ6-V2XbeWdTGgaaaa)(mh=ax-Hrw-9ZtGX9IIr)0.jpg 将末尾的0.jpg替换为i.jpg
+  private static final Pattern FANART_INDEX_PATTERN    = Pattern.compile("(?<=\\D)(\\d+)(?=\\.jpg)");
+  private static final int     FANART_COUNT            = 17;
+
+  private MetadataUtils() {
+  }
+
+  /**
+   * @param description
+   *     the description of the ld+json block
+   * @return the description as plain text
+   */
+  public static String unescapePlot(String description) {
+    return HtmlEntities.unescape(description, true);
+  }
+
+  /**
+   * @param urlPattern
+   *     the thumbnail url pattern of the flashvars, the last index is given as {@code {n}}
+   * @return the urls of all thumbnails, empty if the pattern has no index
+   */
+  public static List<String> thumbUrls(String urlPattern) {
+    if (StringUtils.isEmpty(urlPattern)) {
+      return Collections.emptyList();
+    }
+    Matcher matcher = THUMB_URL_INDEX_PATTERN.matcher(urlPattern);
+    if (!matcher.find()) {
+      return Collections.emptyList();
+    }
+    int thumbsCount = Integer.parseInt(matcher.group(1)) + 1;
+    List<String> urls = new ArrayList<>(thumbsCount);
+    for (int i = 0; i < thumbsCount; i++) {
+      urls.add(matcher.replaceAll(String.valueOf(i)));
+    }
+    return urls;
+  }
+
+  /**
+   * @param posterUrl
+   *     the url of the poster, which is the first frame of the video
+   * @return the urls of the other frames, empty if the url has no frame index
+   */
+  public static List<String> fanartUrls(String posterUrl) {
+    if (StringUtils.isEmpty(posterUrl)) {
+      return Collections.emptyList();
+    }
+    Matcher matcher = FANART_INDEX_PATTERN.matcher(posterUrl);
+    if (!matcher.find()) {
+      return Collections.emptyList();
+    }
+    List<String> urls = new ArrayList<>(FANART_COUNT);
+    for (int i = 0; i < FANART_COUNT; i++) {
+      urls.add(matcher.replaceAll(String.valueOf(i)));
+    }
+    return urls;
+  }
+
+  /**
+   * @param width
+   *     the width of an image in pixels
+   * @return the size order of the image for tinyMediaManager, 8 from full HD on, down to 1 for small thumbnails
+   */
+  public static int artworkSizeOrder(int width) {
+    if (width >= 1920) {
+      return 8;
+    }
+    if (width >= 1280) {
+      return 4;
+    }
+    if (width >= 640) {
+      return 2;
+    }
+    return 1;
+  }
+
+  /**
+   * @param interactionStatistic
+   *     the counters of the ld+json block, may be null
+   * @param interactionType
+   *     the schema.org action, e.g. {@code WatchAction} or {@code LikeAction}
+   * @return the count, null if there is no such counter
+   */
+  public static Long interactionCount(List<LdJson.InteractionCounter> interactionStatistic, String interactionType) {
+    if (interactionStatistic == null) {
+      return null;
+    }
+    for (LdJson.InteractionCounter counter : interactionStatistic) {
+      if (counter.getInteractionType() != null && counter.getInteractionType().endsWith(interactionType)) {
+        return parseCount(counter.getUserInteractionCount());
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param count
+   *     a count with group separators like {@code 1,204,311}
+   * @return the count, null if there are no digits
+   */
+  public static Long parseCount(String count) {
+    if (count == null) {
+      return null;
+    }
+    long value = 0;
+    int digits = 0;
+    for (int i = 0; i < count.length(); i++) {
+      char c = count.charAt(i);
+      if (c >= '0' && c <= '9') {
+        if (++digits > 18) {
+          return null;
+        }
+        value = value * 10 + (c - '0');
+      }
+    }
+    return digits == 0 ? null : value;
+  }
+
+  /**
+   * parses relative dates like "3 years ago" or "3年前"
+   *
+   * @param addedDate
+   *     the relative date
+   * @param now
+   *     the point in time the date is relative to
+   * @return the absolute date or null if the text is not a relative date
+   */
+  public static LocalDateTime parseAddedDate(String addedDate, LocalDateTime now) {
+    if (StringUtils.isBlank(addedDate)) {
+      return null;
+    }
+    Matcher numRegex = ADD_DATE_REGEX.matcher(addedDate.trim());
+    if (!numRegex.find()) {
+      return null;
+    }
+    LocalDateTime time = now;
+    switch (numRegex.group(2)) {
+      case "年":
+      case "year":
+      case "years":
+        time = time.minusYears(Long.parseLong(numRegex.group(1)));
+        break;
+      case "月":
+      case "month":
+      case "months":
+        time = time.minusMonths(Long.parseLong(numRegex.group(1)));
+        break;
+      case "日":
+      case "day":
+      case "days":
+        time = time.minusDays(Long.parseLong(numRegex.group(1)));
+        break;
+      case "小时":
+      case "hour":
+      case "hours":
+        time = time.minusHours(Long.parseLong(numRegex.group(1)));
+        break;
+      case "分钟":
+      case "minute":
+      case "minutes":
+        time = time.minusMinutes(Long.parseLong(numRegex.group(1)));
+        break;
+      default:
+        break;
+    }
+    return time;
+  }
+}
@@ -0,0 +1,620 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.parser;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.LdJson;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.VideoPage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Extracts a {@link VideoPage} from the raw HTML of {@code view_video.php}, without running any of the page scripts.
+ * <p>
+ * The page is scanned once, front to back, directly on the response bytes: no DOM is built and no copy of the whole page is made. Only
+ * the tags the scraper reads are looked at, and only the few values it keeps are decoded into strings. The inline scripts are read with
+ * a streaming json parser which skips everything but the wanted fields.
+ */
+public class VideoPageHtmlParser {
+  private static final Logger logger = LoggerFactory.getLogger(VideoPageHtmlParser.class);
+
+  private static final byte[] SCRIPT_OPEN   = ascii("<script");
+  private static final byte[] SCRIPT_CLOSE  = ascii("</script");
+  private static final byte[] STYLE_OPEN    = ascii("<style");
+  private static final byte[] STYLE_CLOSE   = ascii("</style");
+  private static final byte[] COMMENT_OPEN  = ascii("<!--");
+  private static final byte[] COMMENT_CLOSE = ascii("-->");
+  private static final byte[] DIV_CLOSE     = ascii("</div");
+  private static final byte[] A_CLOSE       = ascii("</a");
+  private static final byte[] FLASHVARS     = ascii("flashvars_");
+  private static final byte[] VIDEO_SHOW    = ascii("VIDEO_SHOW");
+  private static final byte[] LD_JSON_TYPE  = ascii("application/ld+json");
+
+  // the inline page scripts are javascript literals, not always strict json
+  private final ObjectMapper lenientMapper = JsonMapper.builder()
+      .enable(JsonReadFeature.ALLOW_SINGLE_QUOTES, JsonReadFeature.ALLOW_UNQUOTED_FIELD_NAMES, JsonReadFeature.ALLOW_TRAILING_COMMA,
+          JsonReadFeature.ALLOW_JAVA_COMMENTS, JsonReadFeature.ALLOW_UNESCAPED_CONTROL_CHARS)
+      .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+      .build();
+
+  /**
+   * Parses the page. Fields which cannot be found are left empty, use {@link VideoPage#isComplete()} to check the result.
+   *
+   * @param viewKey
+   *     the viewkey of the page
+   * @param html
+   *     the raw page source
+   * @return the extracted page data
+   */
+  public VideoPage parse(String viewKey, String html) {
+    return parse(viewKey, html.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Parses the page. Fields which cannot be found are left empty, use {@link VideoPage#isComplete()} to check the result.
+   *
+   * @param viewKey
+   *     the viewkey of the page
+   * @param html
+   *     the raw page source as UTF-8
+   * @return the extracted page data
+   */
+  public VideoPage parse(String viewKey, byte[] html) {
+    VideoPage videoPage = new VideoPage();
+    videoPage.setViewKey(viewKey);
+    new Scan(videoPage, html).run();
+    return videoPage;
+  }
+
+  /**
+   * @param json
+   *     the content of the {@code application/ld+json} script
+   * @return the mapped block
+   * @throws IOException
+   *     the block is not valid json
+   */
+  public LdJson parseLdJson(String json) throws IOException {
+    return lenientMapper.readValue(json, LdJson.class);
+  }
+
+  /**
+   * The state of one pass over a page.
+   */
+  private final class Scan {
+    private final VideoPage videoPage;
+    private final byte[]    buf;
+    private final Tag       tag      = new Tag();
+    private final Tag       innerTag = new Tag();
+
+    // flashvars are keyed by the video id, which is usually but not necessarily known when the script is reached
+    private String  flashvarsId;
+    private String  flashvarsPattern;
+    private boolean addToTab;
+    private boolean userRow;
+    private boolean userName;
+    private String  userAvatar;
+    private int     aboutTabDepth = -1;
+    private int     divDepth;
+
+    private Scan(VideoPage videoPage, byte[] buf) {
+      this.videoPage = videoPage;
+      this.buf = buf;
+    }
+
+    private void run() {
+      int i = 0;
+      while ((i = indexOf(buf, (byte) '<', i, buf.length)) >= 0) {
+        if (startsWith(buf, i, COMMENT_OPEN)) {
+          i = skipPast(i + COMMENT_OPEN.length, COMMENT_CLOSE);
+        }
+        else if (startsWithTag(buf, i, SCRIPT_OPEN)) {
+          i = script(i);
+        }
+        else if (startsWithTag(buf, i, STYLE_OPEN)) {
+          i = skipPast(i + STYLE_OPEN.length, STYLE_CLOSE);
+        }
+        else if (startsWith(buf, i, DIV_CLOSE)) {
+          divDepth--;
+          if (divDepth < aboutTabDepth) {
+            aboutTabDepth = -1;
+          }
+          i += DIV_CLOSE.length;
+        }
+        else if (i + 1 < buf.length && isLetter(buf[i + 1])) {
+          i = element(i);
+        }
+        else {
+          i++;
+        }
+      }
+
+      if (flashvarsPattern != null && flashvarsId != null && flashvarsId.equals(videoPage.getVideoId())) {
+        videoPage.setThumbUrlPattern(flashvarsPattern);
+      }
+    }
+
+    private int element(int start) {
+      int end = tag.read(buf, start);
+      if (tag.is("div")) {
+        divDepth++;
+        if (tag.hasClass("about-tab")) {
+          aboutTabDepth = divDepth;
+        }
+        else if (tag.hasClass("add-to-tab")) {
+          addToTab = true;
+        }
+        else if (aboutTabDepth >= 0 && tag.hasClass("userRow")) {
+          userRow = true;
+        }
+        if (videoPage.getVideoId() == null && tag.attrEquals("id", "player")) {
+          videoPage.setVideoId(StringUtils.trimToNull(tag.attr("data-video-id")));
+        }
+      }
+      else if (tag.is("span")) {
+        if (userRow && tag.hasClass("usernameBadgesWrapper")) {
+          userName = true;
+        }
+        else if (videoPage.getVotesUp() == null && tag.hasClass("votesUp")) {
+          videoPage.setVotesUp(parseInteger(tag.attr("data-rating")));
+        }
+        else if (videoPage.getVotesDown() == null && tag.hasClass("votesDown")) {
+          videoPage.setVotesDown(parseInteger(tag.attr("data-rating")));
+        }
+      }
+      else if (tag.is("img")) {
+        if (addToTab) {
+          addToTab = false;
+          videoPage.setTrailerUrl(StringUtils.trimToNull(tag.attr("data-mediabook")));
+        }
+        else if (userRow && userAvatar == null) {
+          // the avatar precedes the user name in the user row
+          userAvatar = tag.attr("src");
+        }
+      }
+      else if (tag.is("a") && aboutTabDepth >= 0) {
+        return anchor(end);
+      }
+      return end;
+    }
+
+    /**
+     * the performer, category and tag links of the about tab and the uploader link of the user row
+     */
+    private int anchor(int contentStart) {
+      String label = tag.attr("data-label");
+      String href = tag.attr("href");
+      int close = indexOf(buf, A_CLOSE, contentStart, buf.length);
+      if (close < 0) {
+        return contentStart;
+      }
+
+      if ("Category".equals(label)) {
+        videoPage.getCategories().add(text(contentStart, close));
+      }
+      else if ("Tag".equals(label)) {
+        videoPage.getTags().add(text(contentStart, close));
+      }
+      else if ("Pornstar".equals(label)) {
+        videoPage.getPornstars().add(new VideoPage.Performer(text(contentStart, close), firstImageSrc(contentStart, close), href));
+      }
+      else if (userName && videoPage.getUploader() == null) {
+        userRow = false;
+        userName = false;
+        videoPage.setUploader(new VideoPage.Performer(text(contentStart, close), userAvatar, href));
+      }
+      return close + A_CLOSE.length;
+    }
+
+    private int script(int start) {
+      int contentStart = tag.read(buf, start);
+      int contentEnd = indexOf(buf, SCRIPT_CLOSE, contentStart, buf.length);
+      if (contentEnd < 0) {
+        return buf.length;
+      }
+
+      if (tag.attrRangeEquals("type", LD_JSON_TYPE)) {
+        if (videoPage.getLdJson() == null) {
+          try {
+            videoPage.setLdJson(lenientMapper.readValue(buf, contentStart, contentEnd - contentStart, LdJson.class));
+          }
+          catch (IOException e) {
+            logger.debug("could not parse ld+json of {}: {}", videoPage.getViewKey(), e.getMessage());
+          }
+        }
+      }
+      else if (!tag.hasAttr("src")) {
+        inlineScript(contentStart, contentEnd);
+      }
+      return contentEnd + SCRIPT_CLOSE.length;
+    }
+
+    private void inlineScript(int from, int to) {
+      if (flashvarsPattern == null) {
+        int idx = indexOf(buf, FLASHVARS, from, to);
+        if (idx >= 0) {
+          int idStart = idx + FLASHVARS.length;
+          int idEnd = idStart;
+          while (idEnd < to && buf[idEnd] >= '0' && buf[idEnd] <= '9') {
+            idEnd++;
+          }
+          int object = indexOf(buf, (byte) '{', idEnd, to);
+          if (idEnd > idStart && object >= 0) {
+            flashvarsId = new String(buf, idStart, idEnd - idStart, StandardCharsets.US_ASCII);
+            flashvarsPattern = StringUtils.trimToNull(readField(object, to, "thumbs", "urlPattern"));
+          }
+        }
+      }
+
+      if (videoPage.getTitleTranslated() == null && videoPage.getTitleOriginal() == null) {
+        int idx = indexOf(buf, VIDEO_SHOW, from, to);
+        if (idx >= 0) {
+          int object = indexOf(buf, (byte) '{', idx + VIDEO_SHOW.length, to);
+          if (object >= 0 && onlyAssignment(idx + VIDEO_SHOW.length, object)) {
+            String[] titles = readFields(object, to, "videoTitleTranslated", "videoTitleOriginal");
+            videoPage.setTitleTranslated(StringUtils.trimToNull(titles[0]));
+            videoPage.setTitleOriginal(StringUtils.trimToNull(titles[1]));
+          }
+        }
+      }
+    }
+
+    private boolean onlyAssignment(int from, int to) {
+      boolean equals = false;
+      for (int i = from; i < to; i++) {
+        if (buf[i] == '=' && !equals) {
+          equals = true;
+        }
+        else if (!isWhitespace(buf[i])) {
+          return false;
+        }
+      }
+      return equals;
+    }
+
+    /**
+     * reads a string field of a nested object, everything else is skipped without being materialized
+     */
+    private String readField(int from, int to, String objectName, String fieldName) {
+      try (JsonParser parser = lenientMapper.createParser(buf, from, to - from)) {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+          return null;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String name = parser.getCurrentName();
+          JsonToken value = parser.nextToken();
+          if (objectName.equals(name) && value == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+              String nested = parser.getCurrentName();
+              JsonToken nestedValue = parser.nextToken();
+              if (fieldName.equals(nested) && nestedValue == JsonToken.VALUE_STRING) {
+                return parser.getText();
+              }
+              parser.skipChildren();
+            }
+            return null;
+          }
+          parser.skipChildren();
+        }
+      }
+      catch (IOException e) {
+        logger.debug("could not parse inline object: {}", e.getMessage());
+      }
+      return null;
+    }
+
+    /**
+     * reads top level string fields of an object, stops as soon as all of them were found
+     */
+    private String[] readFields(int from, int to, String... fieldNames) {
+      String[] values = new String[fieldNames.length];
+      int found = 0;
+      try (JsonParser parser = lenientMapper.createParser(buf, from, to - from)) {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+          return values;
+        }
+        while (found < fieldNames.length && parser.nextToken() == JsonToken.FIELD_NAME) {
+          String name = parser.getCurrentName();
+          JsonToken value = parser.nextToken();
+          for (int i = 0; i < fieldNames.length; i++) {
+            if (fieldNames[i].equals(name) && value == JsonToken.VALUE_STRING && values[i] == null) {
+              values[i] = parser.getText();
+              found++;
+            }
+          }
+          parser.skipChildren();
+        }
+      }
+      catch (IOException e) {
+        logger.debug("could not parse inline object: {}", e.getMessage());
+      }
+      return values;
+    }
+
+    /**
+     * the text content of a range, without tags, with entities decoded and whitespace collapsed like the DOM text of the element
+     */
+    private String text(int from, int to) {
+      StringBuilder sb = null;
+      int i = from;
+      while (i < to) {
+        int lt = indexOf(buf, (byte) '<', i, to);
+        int segmentEnd = lt < 0 ? to : lt;
+        if (segmentEnd > i) {
+          String segment = HtmlEntities.decode(buf, i, segmentEnd);
+          if (sb == null && lt < 0) {
+            return StringUtils.normalizeSpace(segment);
+          }
+          if (sb == null) {
+            sb = new StringBuilder();
+          }
+          sb.append(segment);
+        }
+        if (lt < 0) {
+          break;
+        }
+        int gt = indexOf(buf, (byte) '>', lt, to);
+        i = gt < 0 ? to : gt + 1;
+        if (sb != null) {
+          sb.append(' ');
+        }
+      }
+      return sb == null ? "" : StringUtils.normalizeSpace(sb.toString());
+    }
+
+    private String firstImageSrc(int from, int to) {
+      int i = from;
+      while ((i = indexOf(buf, (byte) '<', i, to)) >= 0) {
+        int end = innerTag.read(buf, i);
+        if (innerTag.is("img")) {
+          return innerTag.attr("src");
+        }
+        i = end;
+      }
+      return null;
+    }
+
+    private int skipPast(int from, byte[] marker) {
+      int idx = indexOf(buf, marker, from, buf.length);
+      return idx < 0 ? buf.length : idx + marker.length;
+    }
+  }
+
+  /**
+   * A start tag, read in place. Attribute values are only decoded when asked for.
+   */
+  private static final class Tag {
+    private byte[] buf;
+    private int    nameStart;
+    private int    nameEnd;
+    private int    end;
+
+    /**
+     * @return the offset after the tag
+     */
+    private int read(byte[] buf, int start) {
+      this.buf = buf;
+      nameStart = start + 1;
+      nameEnd = nameStart;
+      while (nameEnd < buf.length && !isWhitespace(buf[nameEnd]) && buf[nameEnd] != '>' && buf[nameEnd] != '/') {
+        nameEnd++;
+      }
+      // quoted attribute values may contain '>'
+      int i = nameEnd;
+      byte quote = 0;
+      while (i < buf.length) {
+        byte b = buf[i];
+        if (quote != 0) {
+          if (b == quote) {
+            quote = 0;
+          }
+        }
+        else if (b == '"' || b == '\'') {
+          quote = b;
+        }
+        else if (b == '>') {
+          break;
+        }
+        i++;
+      }
+      end = Math.min(i, buf.length);
+      return Math.min(i + 1, buf.length);
+    }
+
+    private boolean is(String name) {
+      if (nameEnd - nameStart != name.length()) {
+        return false;
+      }
+      for (int i = 0; i < name.length(); i++) {
+        if (Character.toLowerCase((char) buf[nameStart + i]) != name.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * @return the value range as {@code start << 32 | end} or -1 if the tag has no such attribute
+     */
+    private long find(String name) {
+      int i = nameEnd;
+      while (i < end) {
+        while (i < end && (isWhitespace(buf[i]) || buf[i] == '/')) {
+          i++;
+        }
+        int attrStart = i;
+        while (i < end && buf[i] != '=' && !isWhitespace(buf[i]) && buf[i] != '/') {
+          i++;
+        }
+        int attrEnd = i;
+        while (i < end && isWhitespace(buf[i])) {
+          i++;
+        }
+        int valueStart = i;
+        int valueEnd = i;
+        if (i < end && buf[i] == '=') {
+          i++;
+          while (i < end && isWhitespace(buf[i])) {
+            i++;
+          }
+          if (i < end && (buf[i] == '"' || buf[i] == '\'')) {
+            byte quote = buf[i];
+            valueStart = ++i;
+            while (i < end && buf[i] != quote) {
+              i++;
+            }
+            valueEnd = i;
+            i++;
+          }
+          else {
+            valueStart = i;
+            while (i < end && !isWhitespace(buf[i])) {
+              i++;
+            }
+            valueEnd = i;
+          }
+        }
+        if (attrEnd - attrStart == name.length() && regionMatches(buf, attrStart, name)) {
+          return ((long) valueStart << 32) | valueEnd;
+        }
+        if (attrEnd == attrStart) {
+          i++;
+        }
+      }
+      return -1;
+    }
+
+    private boolean hasAttr(String name) {
+      return find(name) >= 0;
+    }
+
+    private String attr(String name) {
+      long range = find(name);
+      return range < 0 ? null : HtmlEntities.decode(buf, (int) (range >>> 32), (int) range);
+    }
+
+    private boolean attrEquals(String name, String value) {
+      long range = find(name);
+      int start = (int) (range >>> 32);
+      return range >= 0 && (int) range - start == value.length() && regionMatches(buf, start, value);
+    }
+
+    private boolean attrRangeEquals(String name, byte[] value) {
+      long range = find(name);
+      int start = (int) (range >>> 32);
+      return range >= 0 && (int) range - start == value.length && startsWith(buf, start, value);
+    }
+
+    /**
+     * @return true if the class attribute contains the class name as a whole token
+     */
+    private boolean hasClass(String className) {
+      long range = find("class");
+      if (range < 0) {
+        return false;
+      }
+      int i = (int) (range >>> 32);
+      int to = (int) range;
+      while (i < to) {
+        while (i < to && isWhitespace(buf[i])) {
+          i++;
+        }
+        int tokenStart = i;
+        while (i < to && !isWhitespace(buf[i])) {
+          i++;
+        }
+        if (i - tokenStart == className.length() && regionMatches(buf, tokenStart, className)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static Integer parseInteger(String value) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    }
+    catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static byte[] ascii(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f';
+  }
+
+  private static boolean isLetter(byte b) {
+    return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+  }
+
+  private static boolean regionMatches(byte[] buf, int offset, String ascii) {
+    for (int i = 0; i < ascii.length(); i++) {
+      if (buf[offset + i] != ascii.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean startsWith(byte[] buf, int offset, byte[] prefix) {
+    if (offset + prefix.length > buf.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (buf[offset + i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * like {@link #startsWith(byte[], int, byte[])} but ignores the case and requires the tag name to end after the prefix
+   */
+  private static boolean startsWithTag(byte[] buf, int offset, byte[] prefix) {
+    int after = offset + prefix.length;
+    if (after >= buf.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (Character.toLowerCase((char) buf[offset + i]) != prefix[i]) {
+        return false;
+      }
+    }
+    return isWhitespace(buf[after]) || buf[after] == '>' || buf[after] == '/';
+  }
+
+  private static int indexOf(byte[] buf, byte b, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (buf[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int indexOf(byte[] buf, byte[] marker, int from, int to) {
+    int last = to - marker.length;
+    byte first = marker[0];
+    for (int i = from; i <= last; i++) {
+      if (buf[i] == first && startsWith(buf, i, marker)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
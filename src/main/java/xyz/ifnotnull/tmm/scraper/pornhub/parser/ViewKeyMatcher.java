@@ -0,0 +1,98 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.parser;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Finds the viewkey in a file name with an ordered list of precompiled patterns. The configured "ID Matcher" has to match the whole
+ * name and comes first, then the built-in patterns: the old {@code ph} keys anywhere in the name, then the plain hex keys of newer
+ * videos. Hashes and release tags are hex as well, so a plain key is only taken where it is set apart: at the start of the name before
+ * one of {@code | ! @}, in brackets or after {@code viewkey=}.
+ */
+public final class ViewKeyMatcher {
+  /** 13 hex digits with at least one digit and one letter, so that words and numbers are not taken for keys */
+  private static final String HEX = "((?=[a-f]*\\d)(?=\\d*[a-f])[0-9a-f]{13})";
+
+  /** {@code ph} followed by 13 hex digits */
+  public static final Pattern LEGACY_KEY    = Pattern.compile("(?<![\\p{Alnum}])(ph[0-9a-f]{13})(?![\\p{Alnum}])");
+  /** 13 hex digits at the start of the name, followed by one of the separators the "ID Matcher" knows */
+  public static final Pattern LEADING_KEY   = Pattern.compile("^\\s*" + HEX + "\\s*[|!@]");
+  /** 13 hex digits in brackets or after {@code viewkey=}, as in a saved url */
+  public static final Pattern DELIMITED_KEY = Pattern.compile("(?:\\[" + HEX + "]|\\(" + HEX + "\\)|viewkey=" + HEX + "(?![\\p{Alnum}]))");
+
+  private static final Logger logger = LoggerFactory.getLogger(ViewKeyMatcher.class);
+
+  private final String        configured;
+  private final Pattern       fullMatch;
+  private final List<Pattern> patterns;
+
+  /**
+   * @param configured
+   *     the configured pattern with the viewkey as first group, matched against the whole name; invalid or blank patterns are skipped
+   */
+  public ViewKeyMatcher(String configured) {
+    this.configured = configured;
+    this.fullMatch = compile(configured);
+    List<Pattern> list = new ArrayList<>();
+    list.add(LEGACY_KEY);
+    list.add(LEADING_KEY);
+    list.add(DELIMITED_KEY);
+    this.patterns = Collections.unmodifiableList(list);
+  }
+
+  private static Pattern compile(String regex) {
+    if (regex == null || regex.trim().isEmpty()) {
+      return null;
+    }
+    try {
+      return Pattern.compile(regex);
+    }
+    catch (PatternSyntaxException e) {
+      logger.warn("ignoring the invalid ID Matcher '{}': {}", regex, e.getDescription());
+      return null;
+    }
+  }
+
+  /**
+   * @return the pattern this matcher was built with, to tell whether the configuration has changed
+   */
+  public String getConfigured() {
+    return configured;
+  }
+
+  /**
+   * @param name
+   *     the file name or search query
+   * @return the first viewkey found or null
+   */
+  public String find(String name) {
+    if (name == null) {
+      return null;
+    }
+    if (fullMatch != null) {
+      Matcher matcher = fullMatch.matcher(name);
+      if (matcher.matches() && matcher.groupCount() >= 1 && matcher.group(1) != null) {
+        return matcher.group(1);
+      }
+    }
+    for (Pattern pattern : patterns) {
+      Matcher matcher = pattern.matcher(name);
+      if (matcher.find()) {
+        // the alternatives of a pattern each have their own group
+        for (int group = 1; group <= matcher.groupCount(); group++) {
+          if (matcher.group(group) != null) {
+            return matcher.group(group);
+          }
+        }
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,23 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads, so that background work of the scraper never keeps tinyMediaManager from exiting.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+  private final String        prefix;
+  private final AtomicInteger counter = new AtomicInteger();
+
+  public DaemonThreadFactory(String prefix) {
+    this.prefix = prefix;
+  }
+
+  @Override
+  public Thread newThread(Runnable r) {
+    Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  }
+}
@@ -0,0 +1,71 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Resident set sizes of this JVM and the processes it started (Playwright drivers and Chromium), read from {@code /proc}. On systems
+ * without {@code /proc} all sizes are reported as -1.
+ */
+public final class ProcessMemory {
+
+  private ProcessMemory() {
+  }
+
+  /**
+   * @return the resident set size of the JVM in bytes or -1 if it is unknown
+   */
+  public static long jvmRss() {
+    return rss(ProcessHandle.current().pid());
+  }
+
+  /**
+   * @return the summed resident set size of all descendants of the JVM in bytes or -1 if it is unknown
+   */
+  public static long descendantsRss() {
+    return descendantsRss(ProcessHandle.current());
+  }
+
+  /**
+   * @param process
+   *     the root of the process tree, not counted itself
+   * @return the summed resident set size of all descendants in bytes or -1 if it is unknown
+   */
+  public static long descendantsRss(ProcessHandle process) {
+    long sum = 0;
+    boolean known = false;
+    for (ProcessHandle child : (Iterable<ProcessHandle>) process.descendants()::iterator) {
+      long rss = rss(child.pid());
+      if (rss >= 0) {
+        sum += rss;
+        known = true;
+      }
+    }
+    return known || process.descendants().findAny().isEmpty() ? sum : -1;
+  }
+
+  /**
+   * @param pid
+   *     the process id
+   * @return the resident set size of the process in bytes or -1 if it is unknown
+   */
+  public static long rss(long pid) {
+    Path status = Paths.get("/proc", String.valueOf(pid), "status");
+    try {
+      for (String line : Files.readAllLines(status, StandardCharsets.UTF_8)) {
+        if (line.startsWith("VmRSS:")) {
+          // VmRSS:     123456 kB
+          String[] parts = line.substring(6).trim().split("\\s+");
+          return Long.parseLong(parts[0]) * 1024;
+        }
+      }
+    }
+    catch (IOException | NumberFormatException e) {
+      // process gone or no procfs
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,85 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller runs the call, callers arriving while it runs wait for it and get the
+ * same result or exception. Nothing is kept once the call has finished, caching is up to the caller.
+ *
+ * @param <K>
+ *     the key type
+ * @param <V>
+ *     the result type
+ */
+public class SingleFlight<K, V> {
+  private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+  private final Runnable                               onJoin;
+
+  /**
+   * @param onJoin
+   *     run for every caller which joins a call in flight instead of starting its own, e.g. to count them
+   */
+  public SingleFlight(Runnable onJoin) {
+    this.onJoin = onJoin;
+  }
+
+  /**
+   * Runs the call, or waits for the call already running for the key.
+   *
+   * @param key
+   *     the key of the call
+   * @param call
+   *     the call to run if none is running for the key
+   * @return the result of the call
+   * @throws E
+   *     the exception of the call
+   * @throws InterruptedException
+   *     the calling thread was interrupted while waiting for another caller's call
+   */
+  @SuppressWarnings("unchecked")
+  public <E extends Exception> V execute(K key, Call<V, E> call) throws E, InterruptedException {
+    CompletableFuture<V> own = new CompletableFuture<>();
+    CompletableFuture<V> running = inFlight.putIfAbsent(key, own);
+    if (running != null) {
+      onJoin.run();
+      try {
+        return running.get();
+      }
+      catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        // the call only throws E besides unchecked exceptions
+        throw (E) cause;
+      }
+    }
+
+    try {
+      V value = call.call();
+      own.complete(value);
+      return value;
+    }
+    catch (Throwable t) {
+      own.completeExceptionally(t);
+      throw t;
+    }
+    finally {
+      inFlight.remove(key, own);
+    }
+  }
+
+  /**
+   * A call which may throw a checked exception.
+   */
+  @FunctionalInterface
+  public interface Call<V, E extends Exception> {
+    V call() throws E;
+  }
+}
@@ -0,0 +1,18 @@
+() => {
+  const items = [];
+  document.querySelectorAll('#videoSearchResult li').forEach(li => {
+    const img = li.querySelector('img');
+    if (!img) {
+      return;
+    }
+    const added = li.querySelector('.added');
+    items.push({
+      viewKey: li.getAttribute('data-video-vkey'),
+      videoId: li.getAttribute('data-video-id'),
+      title: img.getAttribute('data-title'),
+      thumbUrl: img.getAttribute('src'),
+      added: added ? added.textContent.trim() : null
+    });
+  });
+  return JSON.stringify(items);
+}
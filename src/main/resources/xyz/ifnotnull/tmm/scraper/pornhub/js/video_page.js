@@ -0,0 +1,65 @@
+() => {
+  // whitespace collapsed like the raw page parser does, so both paths return the same labels
+  const text = el => el ? el.textContent.replace(/\s+/g, ' ').trim() : null;
+  const attr = (el, name) => el ? el.getAttribute(name) : null;
+  const int = value => {
+    const parsed = parseInt(value, 10);
+    return isNaN(parsed) ? null : parsed;
+  };
+
+  const page = { pornstars: [], categories: [], tags: [] };
+
+  page.videoId = attr(document.querySelector('#player'), 'data-video-id');
+
+  const ldJson = document.querySelector('script[type="application/ld+json"]');
+  if (ldJson) {
+    try {
+      page.ldJson = JSON.parse(ldJson.textContent);
+    }
+    catch (e) {
+      page.ldJson = null;
+    }
+  }
+
+  const flashvars = page.videoId ? window['flashvars_' + page.videoId] : undefined;
+  if (flashvars && flashvars.thumbs) {
+    page.thumbUrlPattern = flashvars.thumbs.urlPattern;
+  }
+
+  if (typeof VIDEO_SHOW !== 'undefined') {
+    page.titleTranslated = VIDEO_SHOW.videoTitleTranslated;
+    page.titleOriginal = VIDEO_SHOW.videoTitleOriginal;
+  }
+
+  page.trailerUrl = attr(document.querySelector('div.add-to-tab img'), 'data-mediabook');
+
+  const video = document.querySelector('#hd-leftColVideoPage');
+  if (!video) {
+    return JSON.stringify(page);
+  }
+  page.votesUp = int(attr(video.querySelector('.votesUp[data-rating]'), 'data-rating'));
+  page.votesDown = int(attr(video.querySelector('.votesDown[data-rating]'), 'data-rating'));
+
+  const aboutTab = video.querySelector('div.about-tab');
+  if (!aboutTab) {
+    return JSON.stringify(page);
+  }
+  const userRow = aboutTab.querySelector('div.userRow');
+  if (userRow) {
+    const username = userRow.querySelector('span.usernameBadgesWrapper');
+    page.uploader = {
+      name: text(username),
+      thumbUrl: attr(userRow.querySelector('img'), 'src'),
+      profilePath: username ? attr(username.querySelector('a[href]'), 'href') : null
+    };
+  }
+  aboutTab.querySelectorAll('[data-label="Pornstar"]').forEach(actor => page.pornstars.push({
+    name: text(actor),
+    thumbUrl: attr(actor.querySelector('img'), 'src'),
+    profilePath: attr(actor, 'href')
+  }));
+  aboutTab.querySelectorAll('[data-label="Category"]').forEach(category => page.categories.push(text(category)));
+  aboutTab.querySelectorAll('[data-label="Tag"]').forEach(tag => page.tags.push(text(tag)));
+
+  return JSON.stringify(page);
+}
@@ -0,0 +1,35 @@
+package xyz.ifnotnull.tmm.scraper.pornhub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Loads the synthetic pages the benchmarks use, they are on the test classpath below {@code /fixtures}.
+ */
+public final class Fixtures {
+  public static final String VIEW_PAGE   = "view_video.html";
+  public static final String SEARCH_PAGE = "search.html";
+  public static final String FILE_NAMES  = "file_names.txt";
+  public static final String VIEW_KEY    = "644d924a9ccc8";
+
+  private Fixtures() {
+  }
+
+  public static byte[] bytes(String name) {
+    try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+      if (in == null) {
+        throw new IllegalStateException("missing fixture " + name);
+      }
+      return in.readAllBytes();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public static String load(String name) {
+    return new String(bytes(name), StandardCharsets.UTF_8);
+  }
+}
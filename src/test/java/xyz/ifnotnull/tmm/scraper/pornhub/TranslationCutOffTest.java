@@ -0,0 +1,51 @@
+package xyz.ifnotnull.tmm.scraper.pornhub;
+
+import org.junit.jupiter.api.Test;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.ScrapeTier;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.VideoPage;
+import xyz.ifnotnull.tmm.scraper.pornhub.parser.VideoPageHtmlParser;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TranslationCutOffTest {
+  private static final String TITLE = "Double Tactical NUKE on Shoot House.. (Modern Warfare 2 Shoot House Gameplay)";
+
+  private final VideoPageHtmlParser parser = new VideoPageHtmlParser();
+  private final byte[]              html   = Fixtures.bytes(Fixtures.VIEW_PAGE);
+
+  @Test
+  void cutOffPageHasTitleForEveryTier() {
+    VideoPage shared = parser.parse(Fixtures.VIEW_KEY, html);
+    for (ScrapeTier tier : ScrapeTier.values()) {
+      VideoPage translated = parser.parse(Fixtures.VIEW_KEY, cut(PornhubMovieMetadataProvider.translationEnd(tier)));
+      assertTrue(translated.hasTranslatedTitle(), "no title before the stop marker of " + tier);
+      assertEquals(TITLE, shared.withTranslation(translated).getTitleTranslated(), tier.name());
+    }
+  }
+
+  @Test
+  void cutOffPageKeepsCategoriesFromCoreOn() {
+    VideoPage full = parser.parse(Fixtures.VIEW_KEY, html);
+    for (ScrapeTier tier : ScrapeTier.values()) {
+      if (tier != ScrapeTier.IDENTIFY) {
+        VideoPage translated = parser.parse(Fixtures.VIEW_KEY, cut(PornhubMovieMetadataProvider.translationEnd(tier)));
+        assertEquals(full.getCategories(), translated.getCategories(), tier.name());
+      }
+    }
+  }
+
+  /**
+   * @return the page up to and including the marker, like the client returns it
+   */
+  private byte[] cut(byte[] marker) {
+    for (int i = 0; i <= html.length - marker.length; i++) {
+      if (Arrays.equals(html, i, i + marker.length, marker, 0, marker.length)) {
+        return Arrays.copyOf(html, i + marker.length);
+      }
+    }
+    throw new AssertionError("marker not in the page");
+  }
+}
@@ -0,0 +1,27 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.artwork;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PosterPipelineTest {
+
+  @Test
+  void findsWindowWithHighestSum() {
+    assertEquals(3, PosterPipeline.bestWindow(new long[] { 1, 0, 0, 5, 9, 2, 0, 1 }, 2));
+    assertEquals(0, PosterPipeline.bestWindow(new long[] { 9, 9, 0, 0, 0, 0 }, 3));
+    assertEquals(3, PosterPipeline.bestWindow(new long[] { 0, 0, 0, 0, 9, 9 }, 3));
+  }
+
+  @Test
+  void centersOnEqualSums() {
+    assertEquals(2, PosterPipeline.bestWindow(new long[] { 1, 1, 1, 1, 1, 1, 1 }, 3));
+    assertEquals(2, PosterPipeline.bestWindow(new long[8], 4));
+  }
+
+  @Test
+  void startsAtZeroWhenWindowCoversAll() {
+    assertEquals(0, PosterPipeline.bestWindow(new long[] { 3, 1, 2 }, 3));
+    assertEquals(0, PosterPipeline.bestWindow(new long[] { 3, 1 }, 5));
+  }
+}
@@ -0,0 +1,29 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ViewKeyIndexTest {
+
+  @Test
+  void normalizesCaseAndPunctuation() {
+    assertEquals("shoot house 2 gameplay", ViewKeyIndex.normalize("  Shoot-House_2 (Gameplay)!! "));
+  }
+
+  @Test
+  void normalizesDiacriticsAndCompatibilityForms() {
+    assertEquals("cafe creme 2", ViewKeyIndex.normalize("Café Crème ²"));
+  }
+
+  @Test
+  void keepsOtherScripts() {
+    assertEquals("日本語 テスト", ViewKeyIndex.normalize("日本語・テスト"));
+  }
+
+  @Test
+  void normalizesNothingToEmpty() {
+    assertEquals("", ViewKeyIndex.normalize(null));
+    assertEquals("", ViewKeyIndex.normalize(" -- "));
+  }
+}
@@ -0,0 +1,92 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.http;
+
+import org.junit.jupiter.api.Test;
+import xyz.ifnotnull.tmm.scraper.pornhub.metrics.ScraperMetrics;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProxyPoolTest {
+  private final ProxyPool pool = new ProxyPool(new ScraperMetrics());
+
+  @Test
+  void parsesEntries() {
+    pool.configure("user:secret@one.example:8080*3, socks5://two.example:1080 \n three.example:0 four.example:3128*x");
+
+    List<ProxyPool.Exit> exits = pool.getExits();
+    assertEquals(2, exits.size());
+    assertEquals("http://one.example:8080", exits.get(0).getServer());
+    assertEquals("user", exits.get(0).getUsername());
+    assertEquals("secret", exits.get(0).getPassword());
+    assertTrue(exits.get(0).isHttp());
+    assertEquals("socks5://two.example:1080", exits.get(1).getServer());
+    assertFalse(exits.get(1).isHttp());
+  }
+
+  @Test
+  void keepsExitsConfiguredAgain() {
+    pool.configure("one.example:8080");
+    ProxyPool.Exit exit = pool.getExits().get(0);
+    pool.configure("one.example:8080 two.example:8080");
+    assertSame(exit, pool.getExits().get(0));
+  }
+
+  @Test
+  void spreadsLoadOverExits() {
+    pool.configure("one.example:8080 two.example:8080");
+    ProxyPool.Selection first = pool.select();
+    ProxyPool.Selection second = pool.select();
+    assertFalse(first.getExit().equals(second.getExit()), "both requests went to the same idle exit");
+    first.release();
+    second.release();
+  }
+
+  @Test
+  void selectsOnlyHttpForHttpClient() {
+    pool.configure("socks5://two.example:1080");
+    assertFalse(pool.hasHttp());
+    assertNull(pool.selectHttp());
+    ProxyPool.Selection selection = pool.select();
+    assertEquals("socks5://two.example:1080", selection.getExit().getServer());
+    selection.release();
+  }
+
+  @Test
+  void skipsExitWithOpenCircuit() {
+    pool.configure("one.example:8080 two.example:8080");
+    ProxyPool.Exit failing = pool.getExits().get(0);
+    for (int i = 0; i < 3; i++) {
+      failing.record(RequestGovernor.NO_STATUS, System.nanoTime());
+    }
+    for (int i = 0; i < 5; i++) {
+      ProxyPool.Selection selection = pool.select();
+      assertEquals(pool.getExits().get(1), selection.getExit());
+      selection.release();
+    }
+  }
+
+  @Test
+  void usesExitClosingFirstWhenAllAreOpen() {
+    pool.configure("one.example:8080");
+    ProxyPool.Exit failing = pool.getExits().get(0);
+    for (int i = 0; i < 3; i++) {
+      failing.record(503, System.nanoTime());
+    }
+    ProxyPool.Selection selection = pool.select();
+    assertSame(failing, selection.getExit());
+    selection.release();
+  }
+
+  @Test
+  void emptyPoolGoesDirect() {
+    pool.configure(" ");
+    assertTrue(pool.isEmpty());
+    assertTrue(pool.hasHttp());
+    assertNull(pool.select());
+  }
+}
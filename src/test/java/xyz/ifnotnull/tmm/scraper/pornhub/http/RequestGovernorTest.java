@@ -0,0 +1,106 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestGovernorTest {
+  private static final String URL = "https://www.pornhub.com/view_video.php?viewkey=644d924a9ccc8";
+
+  @Test
+  void retriesThrottlingAndGatewayErrors() {
+    assertTrue(RequestGovernor.isThrottled(429));
+    assertTrue(RequestGovernor.isThrottled(503));
+    assertFalse(RequestGovernor.isThrottled(502));
+    assertTrue(RequestGovernor.isRetryable(RequestGovernor.NO_STATUS));
+    assertTrue(RequestGovernor.isRetryable(502));
+    assertTrue(RequestGovernor.isRetryable(504));
+    assertFalse(RequestGovernor.isRetryable(404));
+    assertFalse(RequestGovernor.isRetryable(500));
+  }
+
+  @Test
+  void parsesRetryAfterSeconds() {
+    assertEquals(Duration.ofSeconds(120), RequestGovernor.parseRetryAfter(" 120 "));
+    assertNull(RequestGovernor.parseRetryAfter("9999999999"));
+    assertNull(RequestGovernor.parseRetryAfter(""));
+    assertNull(RequestGovernor.parseRetryAfter("soon"));
+  }
+
+  @Test
+  void parsesRetryAfterDate() {
+    String inAMinute = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(60));
+    Duration wait = RequestGovernor.parseRetryAfter(inAMinute);
+    assertTrue(wait.getSeconds() > 50 && wait.getSeconds() <= 60, wait.toString());
+    assertEquals(Duration.ZERO, RequestGovernor.parseRetryAfter("Thu, 01 Jan 1970 00:00:00 GMT"));
+  }
+
+  @Test
+  void backoffDoublesUpToTheMaximum() {
+    RequestGovernor governor = new RequestGovernor(10, 2, 4);
+    for (int attempt = 0; attempt < 20; attempt++) {
+      long max = Math.min(30_000, 500L << attempt);
+      long delay = governor.backoffMillis(attempt);
+      assertTrue(delay >= max / 2 && delay <= max, "attempt " + attempt + ": " + delay);
+    }
+  }
+
+  @Test
+  void spendsBurstThenPacesByRate() throws InterruptedException {
+    RequestGovernor governor = new RequestGovernor(5, 10, 10);
+    long start = System.nanoTime();
+    for (int i = 0; i < 5; i++) {
+      governor.acquire(URL).complete(200, null);
+    }
+    assertTrue(elapsedMillis(start) < 150, "the burst waited");
+    governor.acquire(URL).complete(200, null);
+    assertTrue(elapsedMillis(start) >= 150, "the request after the burst did not wait for a token");
+  }
+
+  @Test
+  void throttlingHalvesConcurrency() throws Exception {
+    RequestGovernor governor = new RequestGovernor(1000, 2, 4);
+    RequestGovernor.Permit first = governor.acquire(URL);
+    RequestGovernor.Permit second = governor.acquire(URL);
+    first.complete(429, null);
+
+    CompletableFuture<RequestGovernor.Permit> third = CompletableFuture.supplyAsync(() -> {
+      try {
+        return governor.acquire(URL);
+      }
+      catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    Thread.sleep(200);
+    assertFalse(third.isDone(), "a second request was let through after the limit was halved");
+    second.complete(200, null);
+    third.get(5, TimeUnit.SECONDS).close();
+  }
+
+  @Test
+  void retryAfterPausesTheHost() throws InterruptedException {
+    RequestGovernor governor = new RequestGovernor(1000, 2, 4);
+    governor.acquire(URL).complete(429, Duration.ofMillis(300));
+    long start = System.nanoTime();
+    governor.acquire("https://www.pornhub.com/other").close();
+    assertTrue(elapsedMillis(start) >= 250, "the host was not paused");
+    start = System.nanoTime();
+    governor.acquire("https://ei.phncdn.com/image.jpg").close();
+    assertTrue(elapsedMillis(start) < 250, "another host was paused");
+  }
+
+  private static long elapsedMillis(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+}
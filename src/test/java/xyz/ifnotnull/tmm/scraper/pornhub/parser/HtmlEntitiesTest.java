@@ -0,0 +1,44 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class HtmlEntitiesTest {
+
+  @Test
+  void decodesNamedAndNumericEntities() {
+    assertEquals("<a & b> \"c\" 'd'\u00a0e", HtmlEntities.unescape("&lt;a &amp; b&gt; &quot;c&quot; &apos;d&apos;&nbsp;e", false));
+    assertEquals("é€😀", HtmlEntities.unescape("&#233;&#x20AC;&#X1F600;", false));
+  }
+
+  @Test
+  void keepsUnknownAndBrokenEntities() {
+    assertEquals("&copy; & &#xZZ; &#99999999; &amp", HtmlEntities.unescape("&copy; & &#xZZ; &#99999999; &amp", false));
+  }
+
+  @Test
+  void returnsTextWithoutEntitiesAsIs() {
+    String text = "nothing to decode";
+    assertSame(text, HtmlEntities.unescape(text, false));
+    assertNull(HtmlEntities.unescape(null, false));
+  }
+
+  @Test
+  void appliesDescriptionRules() {
+    assertEquals("one. two, three", HtmlEntities.unescape("one&amp;period; two&comma; three", true));
+    assertEquals("one&period; two", HtmlEntities.unescape("one&amp;period; two", false));
+  }
+
+  @Test
+  void decodesByteRanges() {
+    byte[] buf = "<a>Caf&#233; &amp; Bar</a><b>Café</b>".getBytes(StandardCharsets.UTF_8);
+    assertEquals("Café & Bar", HtmlEntities.decode(buf, 3, 22));
+    // multi byte characters without entities are copied as they are
+    assertEquals("Café", HtmlEntities.decode(buf, 29, buf.length - 4));
+  }
+}
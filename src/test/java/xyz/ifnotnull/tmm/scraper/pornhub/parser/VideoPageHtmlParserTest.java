@@ -0,0 +1,116 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.parser;
+
+import org.junit.jupiter.api.Test;
+import xyz.ifnotnull.tmm.scraper.pornhub.Fixtures;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.LdJson;
+import xyz.ifnotnull.tmm.scraper.pornhub.dto.VideoPage;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VideoPageHtmlParserTest {
+  private static final String TITLE = "Double Tactical NUKE on Shoot House.. (Modern Warfare 2 Shoot House Gameplay)";
+
+  private final VideoPageHtmlParser parser = new VideoPageHtmlParser();
+
+  @Test
+  void parsesViewPage() {
+    VideoPage page = parser.parse(Fixtures.VIEW_KEY, Fixtures.bytes(Fixtures.VIEW_PAGE));
+
+    assertTrue(page.isComplete());
+    assertEquals(Fixtures.VIEW_KEY, page.getViewKey());
+    assertEquals("430297001", page.getVideoId());
+    assertEquals(TITLE, page.getTitleTranslated());
+    assertEquals(TITLE, page.getTitleOriginal());
+    assertEquals("https://ei.phncdn.com/videos/202304/30/430297001/timeline/160x90/(m=eGCaiCObaaaa)(mh=0W1mA9Gf6t8K3bnC)S{16}.jpg",
+        page.getThumbUrlPattern());
+    assertEquals(8912, page.getVotesUp());
+    assertEquals(611, page.getVotesDown());
+    assertEquals("https://ew.phncdn.com/videos/202304/30/430297001/180P_225K_430297001.webm", page.getTrailerUrl());
+  }
+
+  @Test
+  void parsesAboutTab() {
+    VideoPage page = parser.parse(Fixtures.VIEW_KEY, Fixtures.bytes(Fixtures.VIEW_PAGE));
+
+    assertEquals("ShootHouseClips", page.getUploader().getName());
+    assertEquals("/users/shoothouseclips", page.getUploader().getProfilePath());
+    assertEquals("https://ei.phncdn.com/pics/users/u/001/234/567/avatar1/(m=eW0Q8f)200x200.jpg", page.getUploader().getThumbUrl());
+    assertEquals(2, page.getPornstars().size());
+    assertEquals("Ghost", page.getPornstars().get(0).getName());
+    assertEquals("/pornstar/ghost", page.getPornstars().get(0).getProfilePath());
+    assertEquals("https://ei.phncdn.com/pics/pornstars/000/111/222/(m=lsx2)thumb_1.jpg", page.getPornstars().get(0).getThumbUrl());
+    assertEquals(List.of("Gaming", "Funny", "Verified Amateurs"), page.getCategories());
+    assertEquals(List.of("mw2", "nuke", "shoot house", "gameplay"), page.getTags());
+  }
+
+  @Test
+  void parsesLdJson() {
+    LdJson ldJson = parser.parse(Fixtures.VIEW_KEY, Fixtures.bytes(Fixtures.VIEW_PAGE)).getLdJson();
+
+    assertEquals(TITLE, ldJson.getName());
+    assertEquals("PT00H12M41S", ldJson.getDuration());
+    assertEquals("ShootHouseClips", ldJson.getAuthor());
+    assertEquals("2023-04-30T03:12:44+00:00", ldJson.getUploadDate());
+    assertEquals(2, ldJson.getInteractionStatistic().size());
+    // the description is unescaped later with the rules for descriptions
+    assertTrue(ldJson.getDescription().contains("&amp;period;"));
+  }
+
+  @Test
+  void stringAndBytesGiveTheSamePage() {
+    VideoPage fromString = parser.parse(Fixtures.VIEW_KEY, Fixtures.load(Fixtures.VIEW_PAGE));
+    VideoPage fromBytes = parser.parse(Fixtures.VIEW_KEY, Fixtures.bytes(Fixtures.VIEW_PAGE));
+
+    assertEquals(fromBytes.getTitleTranslated(), fromString.getTitleTranslated());
+    assertEquals(fromBytes.getCategories(), fromString.getCategories());
+    assertEquals(fromBytes.getTags(), fromString.getTags());
+  }
+
+  @Test
+  void decodesAndCollapsesLabels() {
+    VideoPage page = parser.parse("x", aboutTab("<div class=\"categoriesWrapper\">"
+        + "<a data-label=\"Category\">  Big &amp;\n  Small </a><a data-label=\"Category\">Caf&#233;</a></div>"
+        + "<div class=\"tagsWrapper\"><a data-label=\"Tag\"> a <b>b</b></a></div>"));
+
+    assertEquals(List.of("Big & Small", "Café"), page.getCategories());
+    assertEquals(List.of("a b"), page.getTags());
+  }
+
+  @Test
+  void skipsCommentsAndScripts() {
+    VideoPage page = parser.parse("x", aboutTab("<!-- <a data-label=\"Tag\">comment</a> -->"
+        + "<script>var x = '<a data-label=\"Tag\">script</a>';</script><div class=\"tagsWrapper\"><a data-label=\"Tag\">tag</a></div>"));
+
+    assertEquals(List.of("tag"), page.getTags());
+  }
+
+  @Test
+  void leavesMissingFieldsEmpty() {
+    VideoPage page = parser.parse("x", "<html><body><p>This video has been removed</p></body></html>");
+
+    assertFalse(page.isComplete());
+    assertFalse(page.hasTitle());
+    assertNull(page.getLdJson());
+    assertNull(page.getUploader());
+    assertTrue(page.getCategories().isEmpty());
+  }
+
+  @Test
+  void parsesTruncatedPage() {
+    String html = Fixtures.load(Fixtures.VIEW_PAGE);
+    VideoPage page = parser.parse(Fixtures.VIEW_KEY, html.substring(0, html.indexOf("Verified Amateurs")));
+
+    assertEquals(TITLE, page.getLdJson().getName());
+    assertEquals(List.of("Gaming", "Funny"), page.getCategories());
+    assertTrue(page.getTags().isEmpty());
+  }
+
+  private static String aboutTab(String content) {
+    return "<html><body><div id=\"hd-leftColVideoPage\"><div class=\"about-tab\">" + content + "</div></div></body></html>";
+  }
+}
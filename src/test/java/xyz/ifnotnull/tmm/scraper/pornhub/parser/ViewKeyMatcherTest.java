@@ -0,0 +1,53 @@
+package xyz.ifnotnull.tmm.scraper.pornhub.parser;
+
+import org.junit.jupiter.api.Test;
+import xyz.ifnotnull.tmm.scraper.pornhub.Fixtures;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ViewKeyMatcherTest {
+  private final ViewKeyMatcher matcher = new ViewKeyMatcher(null);
+
+  @Test
+  void findsLegacyKeysAnywhere() {
+    assertEquals("ph5f1c2a3b4d5e6", matcher.find("My Video ph5f1c2a3b4d5e6 1080p.mp4"));
+    assertNull(matcher.find("graph5f1c2a3b4d5e6.mp4"));
+  }
+
+  @Test
+  void findsLeadingKeys() {
+    assertEquals("644d924a9ccc8", matcher.find("644d924a9ccc8 | Shoot House.mp4"));
+    assertEquals("644d924a9ccc8", matcher.find("644d924a9ccc8@Shoot House.mp4"));
+  }
+
+  @Test
+  void findsDelimitedKeys() {
+    assertEquals("644d924a9ccc8", matcher.find("Shoot House [644d924a9ccc8].mp4"));
+    assertEquals("644d924a9ccc8", matcher.find("Shoot House (644d924a9ccc8).mp4"));
+    assertEquals("644d924a9ccc8", matcher.find("https://www.pornhub.com/view_video.php?viewkey=644d924a9ccc8"));
+  }
+
+  @Test
+  void ignoresHexLikeWords() {
+    // hex keys in free text, without digits or without letters are too likely to be something else
+    assertNull(matcher.find("Shoot House 644d924a9ccc8.mp4"));
+    assertNull(matcher.find("[1234567890123] Shoot House.mp4"));
+    assertNull(matcher.find("[deadbeefdeadb] Shoot House.mp4"));
+    assertNull(matcher.find(null));
+  }
+
+  @Test
+  void prefersConfiguredPattern() {
+    ViewKeyMatcher configured = new ViewKeyMatcher(MetadataUtils.DEFAULT_ID_MATCHER);
+    assertEquals("pha268a2607679d", configured.find(Fixtures.load(Fixtures.FILE_NAMES).lines().findFirst().orElseThrow()));
+    assertEquals("644d924a9ccc8", new ViewKeyMatcher("^id-(\\w+)\\..*").find("id-644d924a9ccc8.mp4"));
+  }
+
+  @Test
+  void skipsInvalidPattern() {
+    ViewKeyMatcher invalid = new ViewKeyMatcher("([");
+    assertEquals("644d924a9ccc8", invalid.find("Shoot House [644d924a9ccc8].mp4"));
+    assertEquals("([", invalid.getConfigured());
+  }
+}